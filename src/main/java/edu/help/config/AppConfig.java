@@ -1,14 +1,44 @@
 package edu.help.config;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.web.client.RestTemplate;
 
 @Configuration
 public class AppConfig {
 
+    /**
+     * Transport for the Postgres service. Connections are kept alive and
+     * reused across calls, and HTTP/2 is negotiated over TLS where the server
+     * offers it, so one connection multiplexes every in-flight order; HTTP/1.1
+     * servers get a pool of keep-alive connections instead. The JDK reads the
+     * pool size and keep-alive timeout once, from system properties, so they
+     * are set as JVM flags in the Dockerfile.
+     */
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public HttpClient postgresHttpClient(@Value("${postgres.http.version:HTTP_2}") String version,
+            @Value("${postgres.timeout.connect-ms:2000}") long connectTimeoutMillis,
+            @Value("${postgres.http.threads:8}") int threads) {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.valueOf(version))
+                .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                .executor(httpExecutor(threads))
+                .build();
+    }
+
+    // Bounded instead of the JDK's default unbounded cached pool
+    private static ExecutorService httpExecutor(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "postgres-http-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 }
@@ -0,0 +1,73 @@
+package edu.help.config;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+
+import redis.clients.jedis.CommandObject;
+import redis.clients.jedis.Connection;
+import redis.clients.jedis.ConnectionFactory;
+import redis.clients.jedis.DefaultJedisSocketFactory;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.JedisClientConfig;
+import redis.clients.jedis.JedisSocketFactory;
+
+/**
+ * Pool factory whose connections time every command they run. A pipeline
+ * is timed as one "PIPELINE" round trip, from the flush to its last reply.
+ */
+public class InstrumentedConnectionFactory extends ConnectionFactory {
+
+    private final JedisSocketFactory socketFactory;
+    private final JedisClientConfig clientConfig;
+    private final RedisMetrics metrics;
+
+    public InstrumentedConnectionFactory(HostAndPort hostAndPort, JedisClientConfig clientConfig,
+            RedisMetrics metrics) {
+        super(hostAndPort, clientConfig);
+        this.socketFactory = new DefaultJedisSocketFactory(hostAndPort, clientConfig);
+        this.clientConfig = clientConfig;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public PooledObject<Connection> makeObject() throws Exception {
+        Connection connection = new InstrumentedConnection(socketFactory, clientConfig, metrics);
+        return new DefaultPooledObject<>(connection);
+    }
+
+    private static class InstrumentedConnection extends Connection {
+
+        private final RedisMetrics metrics;
+
+        InstrumentedConnection(JedisSocketFactory socketFactory, JedisClientConfig clientConfig,
+                RedisMetrics metrics) {
+            super(socketFactory, clientConfig);
+            this.metrics = metrics;
+        }
+
+        @Override
+        public <T> T executeCommand(CommandObject<T> commandObject) {
+            long start = System.nanoTime();
+            try {
+                return super.executeCommand(commandObject);
+            } finally {
+                String command = new String(commandObject.getArguments().getCommand().getRaw(),
+                        StandardCharsets.UTF_8);
+                metrics.recordCommand(command, System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public List<Object> getMany(int count) {
+            long start = System.nanoTime();
+            try {
+                return super.getMany(count);
+            } finally {
+                metrics.recordCommand("PIPELINE", System.nanoTime() - start);
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package edu.help.config;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.UUID;
+
+public class NodeConfig {
+    // Stable name for this instance; set NODE_ID when hostnames are not unique
+    public static final String NODE_ID = resolveNodeId();
+
+    private static String resolveNodeId() {
+        String nodeId = System.getenv("NODE_ID");
+        if (nodeId != null && !nodeId.isBlank()) {
+            return nodeId;
+        }
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return UUID.randomUUID().toString();
+        }
+    }
+}
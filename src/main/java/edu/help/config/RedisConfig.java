@@ -1,44 +1,111 @@
 package edu.help.config;
 
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.data.redis.connection.RedisConnectionFactory;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
-import org.springframework.data.redis.serializer.StringRedisSerializer;
 
-import redis.clients.jedis.JedisPool;
-import redis.clients.jedis.JedisPoolConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import redis.clients.jedis.ConnectionPoolConfig;
+import redis.clients.jedis.DefaultJedisClientConfig;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.JedisClientConfig;
+import redis.clients.jedis.JedisCluster;
 import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.UnifiedJedis;
 
+/**
+ * The one Redis client the app uses. Pool size must cover the WebSocket
+ * worker threads plus the connections held for good by the session router's
+ * subscription and the order event consumers' blocking reads.
+ */
 @Configuration
 public class RedisConfig {
 
+    @Value("${redis.host:localhost}")
+    private String host;
+
+    @Value("${redis.port:6379}")
+    private int port;
+
+    // Comma-separated host:port seeds; when set, talk to a Redis Cluster instead of a single node
+    @Value("${redis.cluster.nodes:}")
+    private String clusterNodes;
+
+    @Value("${redis.timeout.connect-ms:2000}")
+    private int connectTimeoutMillis;
+
+    // Must stay above the event consumers' XREADGROUP BLOCK time
+    @Value("${redis.timeout.socket-ms:2000}")
+    private int socketTimeoutMillis;
+
+    @Value("${redis.pool.max-total:32}")
+    private int maxTotal;
+
+    @Value("${redis.pool.max-idle:32}")
+    private int maxIdle;
+
+    @Value("${redis.pool.min-idle:4}")
+    private int minIdle;
+
+    // How long a caller waits for a free connection before failing
+    @Value("${redis.pool.max-wait-ms:2000}")
+    private long maxWaitMillis;
+
+    @Value("${redis.pool.idle-evict-ms:60000}")
+    private long idleEvictMillis;
+
+    @Value("${redis.pool.eviction-interval-ms:30000}")
+    private long evictionIntervalMillis;
+
     @Bean
-    public JedisPooled jedisPooled() {
-        // Replace with your Redis host and port
-        return new JedisPooled("localhost", 6379);
+    public RedisMetrics redisMetrics(MeterRegistry registry) {
+        return new RedisMetrics(registry);
     }
 
-    @Bean
-    public JedisPool jedisPool() {
-        // Replace with your Redis host and port
-        return new JedisPool(new JedisPoolConfig(), "localhost", 6379);
+    @Bean(destroyMethod = "close")
+    public UnifiedJedis jedis(RedisMetrics redisMetrics) {
+        JedisClientConfig clientConfig = DefaultJedisClientConfig.builder()
+                .connectionTimeoutMillis(connectTimeoutMillis)
+                .socketTimeoutMillis(socketTimeoutMillis)
+                .build();
+
+        if (clusterNodes.isBlank()) {
+            System.out.println("Connecting to Redis at " + host + ":" + port + " (pool max " + maxTotal + ")");
+            HostAndPort node = new HostAndPort(host, port);
+            JedisPooled jedis = new JedisPooled(poolConfig(),
+                    new InstrumentedConnectionFactory(node, clientConfig, redisMetrics));
+            redisMetrics.bindPools(() -> List.of(jedis.getPool()));
+            return jedis;
+        }
+
+        Set<HostAndPort> nodes = Arrays.stream(clusterNodes.split(","))
+                .map(String::trim)
+                .filter(node -> !node.isEmpty())
+                .map(HostAndPort::from)
+                .collect(Collectors.toSet());
+        System.out.println("Connecting to Redis Cluster via " + nodes + " (pool max " + maxTotal + " per node)");
+
+        // The cluster client builds its own per-node pools, so only pool gauges are available here
+        JedisCluster jedis = new JedisCluster(nodes, clientConfig, JedisCluster.DEFAULT_MAX_ATTEMPTS, poolConfig());
+        redisMetrics.bindPools(() -> jedis.getClusterNodes().values());
+        return jedis;
     }
 
-    @Bean
-    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory connectionFactory) {
-        RedisTemplate<String, Object> template = new RedisTemplate<>();
-        template.setConnectionFactory(connectionFactory);
-        
-        // Use String for keys
-        template.setKeySerializer(new StringRedisSerializer());
-
-        // Use JSON for values
-        Jackson2JsonRedisSerializer<Object> jsonSerializer = new Jackson2JsonRedisSerializer<>(Object.class);
-        template.setValueSerializer(jsonSerializer);
-        template.setHashValueSerializer(jsonSerializer);
-
-        return template;
+    private ConnectionPoolConfig poolConfig() {
+        ConnectionPoolConfig poolConfig = new ConnectionPoolConfig();
+        poolConfig.setMaxTotal(maxTotal);
+        poolConfig.setMaxIdle(maxIdle);
+        poolConfig.setMinIdle(minIdle);
+        poolConfig.setMaxWait(Duration.ofMillis(maxWaitMillis));
+        poolConfig.setMinEvictableIdleDuration(Duration.ofMillis(idleEvictMillis));
+        poolConfig.setTimeBetweenEvictionRuns(Duration.ofMillis(evictionIntervalMillis));
+        poolConfig.setTestWhileIdle(true);
+        return poolConfig;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,61 @@
+package edu.help.config;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import redis.clients.jedis.util.Pool;
+
+/**
+ * Micrometer meters for the Redis client: connection pool gauges, summed
+ * over every pool the client holds (one per node on a cluster), and a
+ * latency timer per command type.
+ */
+public class RedisMetrics {
+
+    private final MeterRegistry registry;
+    private final Map<String, Timer> commandTimers = new ConcurrentHashMap<>();
+
+    public RedisMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void bindPools(Supplier<Collection<? extends Pool<?>>> pools) {
+        gauge("redis.pool.active", "Connections borrowed right now", pools, Pool::getNumActive);
+        gauge("redis.pool.idle", "Connections idle in the pool", pools, Pool::getNumIdle);
+        gauge("redis.pool.waiters", "Threads blocked waiting for a connection", pools, Pool::getNumWaiters);
+
+        // Borrow wait: the worst pool is the one worth alerting on
+        Gauge.builder("redis.pool.borrow.wait.mean", pools,
+                p -> p.get().stream().mapToDouble(pool -> pool.getMeanBorrowWaitDuration().toNanos() / 1e6).max().orElse(0))
+                .description("Mean time to borrow a connection")
+                .baseUnit("milliseconds")
+                .register(registry);
+        Gauge.builder("redis.pool.borrow.wait.max", pools,
+                p -> p.get().stream().mapToDouble(pool -> pool.getMaxBorrowWaitDuration().toNanos() / 1e6).max().orElse(0))
+                .description("Longest time spent borrowing a connection")
+                .baseUnit("milliseconds")
+                .register(registry);
+    }
+
+    private void gauge(String name, String description, Supplier<Collection<? extends Pool<?>>> pools,
+            ToDoubleFunction<Pool<?>> value) {
+        Gauge.builder(name, pools, p -> p.get().stream().mapToDouble(value).sum())
+                .description(description)
+                .register(registry);
+    }
+
+    public void recordCommand(String command, long nanos) {
+        commandTimers.computeIfAbsent(command, c -> Timer.builder("redis.command")
+                .description("Redis round trip latency by command")
+                .tag("command", c)
+                .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+}
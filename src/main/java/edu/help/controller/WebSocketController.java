@@ -1,12 +1,28 @@
 package edu.help.controller;
 
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator.OverflowStrategy;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
 
+import edu.help.websocket.BinaryProtocolHandlerDecorator;
+import edu.help.websocket.CompressionHandlerDecorator;
 import edu.help.websocket.OrderWebSocketHandler;
+import edu.help.websocket.OrderedDispatchHandlerDecorator;
+import edu.help.websocket.OutboundFrames;
+import edu.help.websocket.OutboundQueueHandlerDecorator;
+import edu.help.websocket.SessionTaskExecutor;
 import edu.help.websocket.TerminalWebSocketHandler;
+import io.micrometer.core.instrument.MeterRegistry;
 import static edu.help.config.ApiConfig.BASE_WS_PATH;
 
 
@@ -16,19 +32,88 @@ public class WebSocketController implements WebSocketConfigurer {
 
     private final OrderWebSocketHandler orderWebSocketHandler;
     private final TerminalWebSocketHandler terminalWebSocketHandler;
+    private final SessionTaskExecutor sessionTaskExecutor;
+    private final int sendTimeLimitMillis;
+    private final int bufferSizeLimit;
+    private final OverflowStrategy overflowStrategy;
+    private final boolean binaryEnabled;
+    private final MeterRegistry meterRegistry;
+    private final boolean ordersCompression;
+    private final boolean terminalsCompression;
+    private final int compressionMinBytes;
+    private final int compressionLevel;
 
-    public WebSocketController(OrderWebSocketHandler orderWebSocketHandler, TerminalWebSocketHandler terminalWebSocketHandler) {
+    public WebSocketController(OrderWebSocketHandler orderWebSocketHandler, TerminalWebSocketHandler terminalWebSocketHandler,
+            SessionTaskExecutor sessionTaskExecutor, MeterRegistry registry,
+            @Value("${sessions.outbound.send-time-limit-ms:10000}") int sendTimeLimitMillis,
+            @Value("${sessions.outbound.buffer-size-limit:524288}") int bufferSizeLimit,
+            @Value("${sessions.outbound.overflow:TERMINATE}") OverflowStrategy overflowStrategy,
+            @Value("${sessions.binary.enabled:true}") boolean binaryEnabled,
+            @Value("${sessions.compression.orders.enabled:true}") boolean ordersCompression,
+            @Value("${sessions.compression.terminals.enabled:true}") boolean terminalsCompression,
+            @Value("${sessions.compression.min-bytes:1024}") int compressionMinBytes,
+            @Value("${sessions.compression.level:1}") int compressionLevel) {
         this.orderWebSocketHandler = orderWebSocketHandler;
         this.terminalWebSocketHandler = terminalWebSocketHandler;
+        this.sessionTaskExecutor = sessionTaskExecutor;
+        this.sendTimeLimitMillis = sendTimeLimitMillis;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.overflowStrategy = overflowStrategy;
+        this.binaryEnabled = binaryEnabled;
+        this.meterRegistry = registry;
+        this.ordersCompression = ordersCompression;
+        this.terminalsCompression = terminalsCompression;
+        this.compressionMinBytes = compressionMinBytes;
+        this.compressionLevel = compressionLevel;
     }
 
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
-        registry.addHandler(orderWebSocketHandler, BASE_WS_PATH + "/orders")
+        // Handlers run on the session worker pool, and every session gets a bounded outbound queue
+        WebSocketHandler orders = decorate(orderWebSocketHandler, "orders", ordersCompression);
+        WebSocketHandler terminals = decorate(terminalWebSocketHandler, "terminals", terminalsCompression);
+
+        // Clients that offer the CBOR subprotocol get it; everyone else stays on JSON text
+        DefaultHandshakeHandler handshakeHandler = new CompressionAwareHandshakeHandler();
+        if (binaryEnabled) {
+            handshakeHandler.setSupportedProtocols(BinaryProtocolHandlerDecorator.CBOR);
+        }
+
+        registry.addHandler(orders, BASE_WS_PATH + "/orders")
+                .setHandshakeHandler(handshakeHandler)
                 .setAllowedOrigins("*");
-        registry.addHandler(terminalWebSocketHandler, BASE_WS_PATH + "/terminals")
+        registry.addHandler(terminals, BASE_WS_PATH + "/terminals")
+                .setHandshakeHandler(handshakeHandler)
                 .setAllowedOrigins("*");
-                registry.addHandler(terminalWebSocketHandler, BASE_WS_PATH + "/messages")
+                registry.addHandler(terminals, BASE_WS_PATH + "/messages")
+                .setHandshakeHandler(handshakeHandler)
                 .setAllowedOrigins("*");
     }
-}
\ No newline at end of file
+
+    private WebSocketHandler decorate(BinaryProtocolHandlerDecorator.PayloadHandler handler, String endpoint,
+            boolean compression) {
+        // Frames are encoded and compressed on the sending thread before they reach the outbound queue,
+        // so its size limit counts compressed bytes, the ones actually sent
+        WebSocketHandler encoded = new CompressionHandlerDecorator(new BinaryProtocolHandlerDecorator(handler),
+                endpoint, compression, compressionMinBytes, compressionLevel, meterRegistry);
+        return new OrderedDispatchHandlerDecorator(
+                new OutboundQueueHandlerDecorator(encoded, sendTimeLimitMillis, bufferSizeLimit, overflowStrategy),
+                sessionTaskExecutor);
+    }
+
+    // Clients that ask for ?compress=1 skip permessage-deflate, so big frames aren't compressed twice
+    private static class CompressionAwareHandshakeHandler extends DefaultHandshakeHandler {
+        @Override
+        protected List<WebSocketExtension> filterRequestedExtensions(ServerHttpRequest request,
+                List<WebSocketExtension> requestedExtensions, List<WebSocketExtension> supportedExtensions) {
+            List<WebSocketExtension> extensions = super.filterRequestedExtensions(request, requestedExtensions,
+                    supportedExtensions);
+            if (!OutboundFrames.acceptsCompression(request.getURI())) {
+                return extensions;
+            }
+            return extensions.stream()
+                    .filter(extension -> !"permessage-deflate".equalsIgnoreCase(extension.getName()))
+                    .collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package edu.help.dto;
+import lombok.Data;
+import java.util.List;
+
+@Data
+public class MerchantCatalog {
+    private int merchantId;
+    private List<Item> items;
+
+    @Data
+    public static class Item {
+        private int itemId;
+        private boolean available;
+        private boolean pointEligible; // can be paid for with points
+    }
+}
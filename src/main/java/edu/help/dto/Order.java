@@ -10,6 +10,7 @@ public class Order {
     private double totalRegularPrice, totalGratuity, totalServiceFee, totalTax;
     private boolean inAppPayments;
     private List<ItemOrder> items;
+    private long version; // bumped on every status change, so clients can spot a missed update
 
     public Order(String name, int merchantId, int customerId, int employeeId, double totalRegularPrice, int totalPointPrice, double totalGratuity, double totalServiceFee, double totalTax, boolean inAppPayments,
             List<ItemOrder> items, String pointOfSale, String status, String timestamp, String sessionId) {
@@ -52,6 +53,7 @@ public class Order {
                 ", timestamp='" + timestamp + '\'' +
                 ", sessionId='" + sessionId + '\'' +
                 ", employeeId='" + employeeId + '\'' +
+                ", version=" + version +
                 '}';
     }
 
@@ -196,6 +198,16 @@ public class Order {
         this.totalPointPrice = totalPointPrice;
     }
 
+    @JsonProperty("version")
+    public long getVersion() {
+        return version;
+    }
+
+    @JsonProperty("version")
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     @JsonProperty("name")
     public void setName(String name) {
         this.name = name;
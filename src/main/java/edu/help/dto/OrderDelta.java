@@ -0,0 +1,25 @@
+package edu.help.dto;
+
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Compact update for an order the client already holds: just the fields that
+ * changed and the order's new version. A client whose copy is not at
+ * {@code version - 1} has missed an update and should send "refresh" for a
+ * full snapshot.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderDelta {
+    private String orderKey;
+    private int merchantId;
+    private int employeeId;
+    private int customerId;
+    private long version;
+    private Map<String, Object> changes;
+}
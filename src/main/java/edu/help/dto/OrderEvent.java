@@ -0,0 +1,21 @@
+package edu.help.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderEvent {
+    public static final String CREATE = "create";
+    public static final String ARRIVE = "arrive";
+    public static final String READY = "ready";
+    public static final String DELIVER = "deliver";
+    public static final String CANCEL = "cancel";
+
+    private String id; // Stream entry Id, e.g. "1700000000000-0"
+    private String stream; // Merchant stream the event was read from
+    private String type; // create, arrive, ready, deliver or cancel
+    private Order order; // The order as it was right after the change
+}
@@ -11,6 +11,7 @@ public class OrderRequest {
     private int employeeId;
     private String pointOfSale;
     private String password;
+    private String idempotencyKey; // client-generated per create tap, reused on retries
 
     @Override
     public String toString() {
@@ -22,6 +23,7 @@ public class OrderRequest {
                 ", employeeId=" + employeeId +
                 ", pointOfSale=" + pointOfSale +
                 ", password=" + password +
+                ", idempotencyKey=" + idempotencyKey +
                 '}';
     }
 
@@ -1,9 +1,13 @@
 package edu.help.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 public class ResponseWrapper {
     private String messageType;
     private Object data;
     private String message;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String seq; // Event sequence on the order's merchant stream, for resuming after a reconnect
 
     public ResponseWrapper(String messageType, Object data, String message) {
         this.messageType = messageType;
@@ -11,6 +15,11 @@ public class ResponseWrapper {
         this.message = message;
     }
 
+    public ResponseWrapper(String messageType, Object data, String message, String seq) {
+        this(messageType, data, message);
+        this.seq = seq;
+    }
+
     // Getters and setters
     public String getMessageType() {
         return messageType;
@@ -35,4 +44,12 @@ public class ResponseWrapper {
     public void setMessage(String message) {
         this.message = message;
     }
+
+    public String getSeq() {
+        return seq;
+    }
+
+    public void setSeq(String seq) {
+        this.seq = seq;
+    }
 }
@@ -0,0 +1,17 @@
+package edu.help.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RoutedMessage {
+    private String sessionId; // Target session on the receiving node
+    private String payload; // Text frame to send as-is
+    private boolean close; // Close the session after sending
+    private String deltaPayload; // Sent instead of payload if the session takes delta updates; may be null
+    private String orderKey; // Order the frame updates, if any; stale versions of it are dropped
+    private long version; // That order's version in the frame
+}
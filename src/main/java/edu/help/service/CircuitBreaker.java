@@ -0,0 +1,146 @@
+package edu.help.service;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Count-based circuit breaker. Opens when the failure rate over the last
+ * {@code windowSize} calls reaches the threshold, rejects calls while open,
+ * then lets a few trial calls through: all of them succeeding closes it
+ * again, any failure reopens it.
+ *
+ * Each permit remembers the state period it was issued in, and an outcome
+ * only counts toward the period its call started in; a slow call from
+ * before the circuit opened cannot decide a half-open trial.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    /** A permitted call; pass it back to {@link #onSuccess} or {@link #onFailure}. */
+    public static final class Permit {
+        private final long period;
+
+        private Permit(long period) {
+            this.period = period;
+        }
+    }
+
+    private final String name;
+    private final boolean[] window; // true = failed
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openMillis;
+    private final int halfOpenCalls;
+    private final LongSupplier clock;
+
+    private State state = State.CLOSED;
+    private long period; // Bumped on every state change
+    private int index;
+    private int calls;
+    private int failures;
+    private long openedAt;
+    private int trialsStarted;
+    private int trialsSucceeded;
+
+    public CircuitBreaker(String name, int windowSize, int minimumCalls, double failureRatePercent, long openMillis,
+            int halfOpenCalls) {
+        this(name, windowSize, minimumCalls, failureRatePercent, openMillis, halfOpenCalls,
+                System::currentTimeMillis);
+    }
+
+    CircuitBreaker(String name, int windowSize, int minimumCalls, double failureRatePercent, long openMillis,
+            int halfOpenCalls, LongSupplier clock) {
+        this.name = name;
+        this.window = new boolean[windowSize];
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRatePercent / 100.0;
+        this.openMillis = openMillis;
+        this.halfOpenCalls = halfOpenCalls;
+        this.clock = clock;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    // A permit if the call may go ahead, else null; every permit must end in onSuccess or onFailure
+    public synchronized Permit tryAcquire() {
+        if (state == State.OPEN) {
+            if (clock.getAsLong() - openedAt < openMillis) {
+                return null;
+            }
+            state = State.HALF_OPEN;
+            period++;
+            trialsStarted = 0;
+            trialsSucceeded = 0;
+            System.out.println("Circuit " + name + " half-open, trying " + halfOpenCalls + " calls");
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialsStarted >= halfOpenCalls) {
+                return null;
+            }
+            trialsStarted++;
+        }
+        return new Permit(period);
+    }
+
+    public synchronized void onSuccess(Permit permit) {
+        if (permit.period != period) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            if (++trialsSucceeded >= halfOpenCalls) {
+                close();
+            }
+            return;
+        }
+        record(false);
+    }
+
+    public synchronized void onFailure(Permit permit) {
+        if (permit.period != period) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        record(true);
+        if (state == State.CLOSED && calls >= minimumCalls && failures >= failureRateThreshold * calls) {
+            open();
+        }
+    }
+
+    private void record(boolean failed) {
+        if (calls == window.length) {
+            if (window[index]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+        window[index] = failed;
+        if (failed) {
+            failures++;
+        }
+        index = (index + 1) % window.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        period++;
+        openedAt = clock.getAsLong();
+        System.err.println("Circuit " + name + " opened, failing fast for " + openMillis + "ms");
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        period++;
+        index = 0;
+        calls = 0;
+        failures = 0;
+        System.out.println("Circuit " + name + " closed");
+    }
+}
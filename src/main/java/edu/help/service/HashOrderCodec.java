@@ -0,0 +1,182 @@
+package edu.help.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.help.dto.Order;
+import redis.clients.jedis.PipelineBase;
+import redis.clients.jedis.Response;
+
+/**
+ * Stores each order as a flat Redis hash of its scalar fields, with the items
+ * packed into one compact array-of-arrays field. Small hashes use Redis'
+ * listpack encoding, which is considerably smaller than a RedisJSON tree, and
+ * decoding skips the generic JSON object model entirely.
+ *
+ * Field "v" carries the schema version so the layout can evolve.
+ */
+public class HashOrderCodec implements OrderCodec {
+
+    static final String SCHEMA_VERSION = "1";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Override
+    public String name() {
+        return "hash";
+    }
+
+    @Override
+    public String redisType() {
+        return "hash";
+    }
+
+    @Override
+    public void write(PipelineBase pipeline, String orderKey, Order order) throws JsonProcessingException {
+        pipeline.hset(orderKey, encode(order));
+    }
+
+    @Override
+    public List<String> encodeArgs(Order order) throws JsonProcessingException {
+        List<String> args = new ArrayList<>();
+        for (Map.Entry<String, String> field : encode(order).entrySet()) {
+            args.add(field.getKey());
+            args.add(field.getValue());
+        }
+        return args;
+    }
+
+    @Override
+    public Response<?> read(PipelineBase pipeline, String orderKey) {
+        return pipeline.hgetAll(orderKey);
+    }
+
+    @Override
+    public Response<?> readStatus(PipelineBase pipeline, String orderKey) {
+        return pipeline.hget(orderKey, "status");
+    }
+
+    @Override
+    public String decodeStatus(Object stored) {
+        return (String) stored;
+    }
+
+    @Override
+    public Response<?> writeSessionId(PipelineBase pipeline, String orderKey, String sessionId) {
+        return pipeline.hset(orderKey, "sessionId", sessionId);
+    }
+
+    public Map<String, String> encode(Order order) throws JsonProcessingException {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("v", SCHEMA_VERSION);
+        putIfPresent(fields, "name", order.getName());
+        fields.put("merchantId", String.valueOf(order.getMerchantId()));
+        fields.put("customerId", String.valueOf(order.getCustomerId()));
+        fields.put("employeeId", String.valueOf(order.getEmployeeId()));
+        fields.put("totalRegularPrice", String.valueOf(order.getTotalRegularPrice()));
+        fields.put("totalPointPrice", String.valueOf(order.getTotalPointPrice()));
+        fields.put("totalGratuity", String.valueOf(order.getTotalGratuity()));
+        fields.put("totalServiceFee", String.valueOf(order.getTotalServiceFee()));
+        fields.put("totalTax", String.valueOf(order.getTotalTax()));
+        fields.put("inAppPayments", order.isInAppPayments() ? "1" : "0");
+        putIfPresent(fields, "pointOfSale", order.getPointOfSale());
+        putIfPresent(fields, "status", order.getStatus());
+        putIfPresent(fields, "timestamp", order.getTimestamp());
+        putIfPresent(fields, "sessionId", order.getSessionId());
+        fields.put("version", String.valueOf(order.getVersion()));
+
+        // [[itemId, itemName, paymentType, quantity], ...]
+        if (order.getItems() != null) {
+            List<Object[]> items = new ArrayList<>();
+            for (Order.ItemOrder item : order.getItems()) {
+                items.add(new Object[] { item.getDrinkId(), item.getDrinkName(), item.getPaymentType(),
+                        item.getQuantity() });
+            }
+            fields.put("items", objectMapper.writeValueAsString(items));
+        }
+        return fields;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Order decode(Object stored) throws JsonProcessingException {
+        Map<String, String> fields;
+        if (stored instanceof Map) {
+            fields = (Map<String, String>) stored;
+        } else if (stored instanceof List<?> flat) {
+            // HGETALL inside a script comes back as [field, value, field, value, ...]
+            fields = new HashMap<>();
+            for (int i = 0; i + 1 < flat.size(); i += 2) {
+                fields.put((String) flat.get(i), (String) flat.get(i + 1));
+            }
+        } else {
+            return null;
+        }
+        return decode(fields);
+    }
+
+    public Order decode(Map<String, String> fields) throws JsonProcessingException {
+        if (fields.isEmpty()) {
+            return null;
+        }
+        if (!SCHEMA_VERSION.equals(fields.get("v"))) {
+            System.err.println("Unexpected order hash schema version: " + fields.get("v"));
+        }
+
+        Order order = new Order();
+        order.setName(fields.get("name"));
+        order.setMerchantId(parseInt(fields.get("merchantId")));
+        order.setCustomerId(parseInt(fields.get("customerId")));
+        order.setEmployeeId(parseInt(fields.get("employeeId")));
+        order.setTotalRegularPrice(parseDouble(fields.get("totalRegularPrice")));
+        order.setTotalPointPrice(parseInt(fields.get("totalPointPrice")));
+        order.setTotalGratuity(parseDouble(fields.get("totalGratuity")));
+        order.setTotalServiceFee(parseDouble(fields.get("totalServiceFee")));
+        order.setTotalTax(parseDouble(fields.get("totalTax")));
+        order.setInAppPayments("1".equals(fields.get("inAppPayments")));
+        order.setPointOfSale(fields.get("pointOfSale"));
+        order.setStatus(fields.get("status"));
+        order.setTimestamp(fields.get("timestamp"));
+        order.setSessionId(fields.get("sessionId"));
+        order.setVersion(parseLong(fields.get("version")));
+
+        String items = fields.get("items");
+        if (items != null) {
+            List<Order.ItemOrder> itemOrders = new ArrayList<>();
+            for (JsonNode item : objectMapper.readTree(items)) {
+                itemOrders.add(new Order.ItemOrder(
+                        item.get(0).asInt(),
+                        item.get(1).isNull() ? null : item.get(1).asText(),
+                        item.get(2).isNull() ? null : item.get(2).asText(),
+                        item.get(3).asInt()));
+            }
+            order.setItems(itemOrders);
+        }
+        return order;
+    }
+
+    private static void putIfPresent(Map<String, String> fields, String name, String value) {
+        if (value != null) {
+            fields.put(name, value);
+        }
+    }
+
+    private static int parseInt(String value) {
+        return value == null ? 0 : Integer.parseInt(value);
+    }
+
+    private static long parseLong(String value) {
+        return value == null ? 0 : Long.parseLong(value);
+    }
+
+    private static double parseDouble(String value) {
+        return value == null ? 0 : Double.parseDouble(value);
+    }
+}
@@ -0,0 +1,83 @@
+package edu.help.service;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.help.dto.Order;
+import redis.clients.jedis.PipelineBase;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.json.Path2;
+
+/**
+ * Stores each order as a RedisJSON document. This is the original format.
+ */
+public class JsonOrderCodec implements OrderCodec {
+
+    private static final Path2 STATUS_PATH = Path2.of("$.status");
+    private static final Path2 SESSION_ID_PATH = Path2.of("$.sessionId");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public JsonOrderCodec() {
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    @Override
+    public String name() {
+        return "json";
+    }
+
+    @Override
+    public String redisType() {
+        return "ReJSON-RL";
+    }
+
+    @Override
+    public void write(PipelineBase pipeline, String orderKey, Order order) throws JsonProcessingException {
+        pipeline.jsonSet(orderKey, Path2.ROOT_PATH, objectMapper.writeValueAsString(order));
+    }
+
+    @Override
+    public List<String> encodeArgs(Order order) throws JsonProcessingException {
+        return Collections.singletonList(objectMapper.writeValueAsString(order));
+    }
+
+    @Override
+    public Response<?> read(PipelineBase pipeline, String orderKey) {
+        return pipeline.jsonGet(orderKey, Path2.ROOT_PATH);
+    }
+
+    @Override
+    public Order decode(Object stored) throws JsonProcessingException {
+        // Path2 reads come back wrapped in an array; scripts hand back the bare document
+        if (stored instanceof JSONArray documents) {
+            return documents.isEmpty() ? null : objectMapper.readValue(documents.get(0).toString(), Order.class);
+        }
+        return stored == null ? null : objectMapper.readValue(stored.toString(), Order.class);
+    }
+
+    @Override
+    public Response<?> readStatus(PipelineBase pipeline, String orderKey) {
+        return pipeline.jsonGet(orderKey, STATUS_PATH);
+    }
+
+    @Override
+    public String decodeStatus(Object stored) {
+        if (stored instanceof JSONArray statuses && !statuses.isEmpty()) {
+            return statuses.optString(0, null);
+        }
+        return null;
+    }
+
+    @Override
+    public Response<?> writeSessionId(PipelineBase pipeline, String orderKey, String sessionId) {
+        return pipeline.jsonSet(orderKey, SESSION_ID_PATH, JSONObject.quote(sessionId));
+    }
+}
@@ -0,0 +1,35 @@
+package edu.help.service;
+
+import java.util.List;
+
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+
+/**
+ * A Lua script run with EVALSHA, loaded on first use and reloaded if the
+ * server's script cache no longer has it.
+ */
+public class LuaScript {
+
+    private final String source;
+    private volatile String sha;
+
+    public LuaScript(String source) {
+        this.source = source;
+    }
+
+    public Object eval(UnifiedJedis jedis, List<String> keys, List<String> args) {
+        // Loading against the first key sends the script to the node that will run it
+        String currentSha = sha;
+        if (currentSha == null) {
+            currentSha = sha = jedis.scriptLoad(source, keys.get(0));
+        }
+        try {
+            return jedis.evalsha(currentSha, keys, args);
+        } catch (JedisNoScriptException e) {
+            // Script cache was flushed, we failed over, or this cluster node has not seen it yet
+            sha = jedis.scriptLoad(source, keys.get(0));
+            return jedis.evalsha(sha, keys, args);
+        }
+    }
+}
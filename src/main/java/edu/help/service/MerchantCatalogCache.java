@@ -0,0 +1,167 @@
+package edu.help.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import edu.help.dto.MerchantCatalog;
+import edu.help.dto.OrderRequest;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.UnifiedJedis;
+
+/**
+ * Per-merchant snapshot of the catalog, used to turn away orders for unknown
+ * or unavailable items without a backend round trip. Snapshots expire after
+ * {@code orders.catalog.ttl-seconds} and are dropped on every node as soon as
+ * a merchantId is published on {@link RedisKeys#CATALOG_CHANNEL}.
+ *
+ * Loads happen in the background: until a merchant's snapshot is in, or if
+ * the backend cannot serve one, orders go straight to the backend unchecked.
+ */
+@Service
+public class MerchantCatalogCache {
+
+    private static final long RESUBSCRIBE_DELAY_MILLIS = 1000;
+
+    private static final class Entry {
+        private final Map<Integer, MerchantCatalog.Item> items; // null when the load failed
+        private final long loadedAt;
+
+        private Entry(Map<Integer, MerchantCatalog.Item> items, long loadedAt) {
+            this.items = items;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private final PostgresClient postgresClient;
+    private final UnifiedJedis jedis;
+    private final long ttlMillis;
+    private final Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<Integer, Boolean> loading = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> invalidatedAt = new ConcurrentHashMap<>();
+    private final InvalidationListener listener = new InvalidationListener();
+    private volatile boolean running = true;
+
+    public MerchantCatalogCache(PostgresClient postgresClient, UnifiedJedis jedis,
+            @Value("${orders.catalog.ttl-seconds:300}") long ttlSeconds) {
+        this.postgresClient = postgresClient;
+        this.jedis = jedis;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+    }
+
+    @PostConstruct
+    public void start() {
+        Thread thread = new Thread(this::listen, "catalog-invalidation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (listener.isSubscribed()) {
+            listener.unsubscribe();
+        }
+    }
+
+    /**
+     * Checks the requested items against the merchant's snapshot. Returns the
+     * message to send back if the order cannot go through, or null if it may
+     * (including when no snapshot is loaded).
+     */
+    public String validate(OrderRequest orderRequest) {
+        Map<Integer, MerchantCatalog.Item> items = getItems(orderRequest.getMerchantId());
+        if (items == null) {
+            return null;
+        }
+
+        for (OrderRequest.ItemOrder itemOrder : orderRequest.getItems()) {
+            MerchantCatalog.Item item = items.get(itemOrder.getItemId());
+            if (item == null || !item.isAvailable()) {
+                return "Some items in your order are no longer available. Please refresh the menu and try again.";
+            }
+            if ("points".equals(itemOrder.getPaymentType()) && !item.isPointEligible()) {
+                return "Some items in your order can't be paid for with points.";
+            }
+        }
+        return null;
+    }
+
+    public void invalidate(int merchantId) {
+        invalidatedAt.put(merchantId, System.currentTimeMillis());
+        entries.remove(merchantId);
+        System.out.println("Dropped cached catalog for merchant " + merchantId);
+    }
+
+    private Map<Integer, MerchantCatalog.Item> getItems(int merchantId) {
+        Entry entry = entries.get(merchantId);
+        if (entry == null || System.currentTimeMillis() - entry.loadedAt >= ttlMillis) {
+            // Never validate against an expired snapshot: a newly added item would be refused
+            load(merchantId);
+            return null;
+        }
+        return entry.items;
+    }
+
+    private void load(int merchantId) {
+        if (loading.putIfAbsent(merchantId, Boolean.TRUE) != null) {
+            return;
+        }
+        long requestedAt = System.currentTimeMillis();
+        postgresClient.getCatalog(merchantId).whenComplete((catalog, error) -> {
+            loading.remove(merchantId);
+            Map<Integer, MerchantCatalog.Item> items = null;
+            if (error != null) {
+                // Remember the miss too, so a backend without catalogs is not asked on every order
+                System.err.println("Failed to load catalog for merchant " + merchantId + ": " + error.getMessage());
+            } else if (catalog != null && catalog.getItems() != null) {
+                items = new HashMap<>();
+                for (MerchantCatalog.Item item : catalog.getItems()) {
+                    items.put(item.getItemId(), item);
+                }
+            }
+            // A load that started before the latest change may hold the old menu
+            if (invalidatedAt.getOrDefault(merchantId, 0L) < requestedAt) {
+                entries.put(merchantId, new Entry(items, requestedAt));
+            }
+        });
+    }
+
+    private void listen() {
+        while (running) {
+            try {
+                System.out.println("Listening for catalog changes on " + RedisKeys.CATALOG_CHANNEL);
+                jedis.subscribe(listener, RedisKeys.CATALOG_CHANNEL);
+            } catch (Exception e) {
+                System.err.println("Catalog invalidation subscription failed: " + e.getMessage());
+            }
+            // Changes published while disconnected were missed, so start over
+            entries.clear();
+            if (running) {
+                try {
+                    Thread.sleep(RESUBSCRIBE_DELAY_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private class InvalidationListener extends JedisPubSub {
+        @Override
+        public void onMessage(String channel, String message) {
+            try {
+                invalidate(Integer.parseInt(message.trim()));
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring catalog invalidation for '" + message + "'");
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package edu.help.service;
+
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import edu.help.dto.Order;
+import redis.clients.jedis.PipelineBase;
+import redis.clients.jedis.Response;
+
+/**
+ * How an {@link Order} is laid out under its Redis key. Every codec keeps
+ * {@code status} and {@code sessionId} individually addressable so they can be
+ * changed without rewriting the whole order. Reads are queued on a pipeline so
+ * callers can batch them.
+ */
+public interface OrderCodec {
+
+    // Configuration name, as used by orders.storage.format
+    String name();
+
+    // What Redis TYPE reports for keys written by this codec
+    String redisType();
+
+    void write(PipelineBase pipeline, String orderKey, Order order) throws JsonProcessingException;
+
+    // Script arguments that recreate the order, in the form the order scripts expect for this type
+    List<String> encodeArgs(Order order) throws JsonProcessingException;
+
+    Response<?> read(PipelineBase pipeline, String orderKey);
+
+    // Turns a read() reply or a script reply into an Order; null if the key was empty
+    Order decode(Object stored) throws JsonProcessingException;
+
+    Response<?> readStatus(PipelineBase pipeline, String orderKey);
+
+    String decodeStatus(Object stored);
+
+    Response<?> writeSessionId(PipelineBase pipeline, String orderKey, String sessionId);
+}
@@ -0,0 +1,134 @@
+package edu.help.service;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.help.dto.OrderEvent;
+
+/**
+ * One consumer in one consumer group of the order event log, run on its own
+ * thread. Events are acknowledged once the handler returns; if it throws, the
+ * event stays pending and is retried on the next pending sweep, up to
+ * {@link #MAX_ATTEMPTS} times. Consumer names change with every pod, so
+ * entries another consumer has left idle for {@code claimIdleMillis} are
+ * claimed and retried here too; otherwise a node that dies takes its
+ * pending events with it.
+ */
+public class OrderEventConsumer implements Runnable {
+
+    public interface Handler {
+        void handle(OrderEvent event) throws Exception;
+    }
+
+    private static final int BATCH_SIZE = 100;
+    private static final int BLOCK_MILLIS = 1000;
+    private static final long PENDING_SWEEP_MILLIS = 10_000;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long CLAIM_INTERVAL_MILLIS = 30_000;
+
+    private final OrderEventLog eventLog;
+    private final String group;
+    private final String consumer;
+    private final Handler handler;
+    private final long claimIdleMillis;
+    private final Set<String> knownStreams = new HashSet<>();
+    private final Map<String, Integer> attempts = new HashMap<>();
+    private volatile boolean running = true;
+    private long lastPendingSweep;
+    private long lastClaim;
+
+    public OrderEventConsumer(OrderEventLog eventLog, String group, String consumer, Handler handler,
+            long claimIdleMillis) {
+        this.eventLog = eventLog;
+        this.group = group;
+        this.consumer = consumer;
+        this.handler = handler;
+        this.claimIdleMillis = claimIdleMillis;
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public void run() {
+        System.out.println("Order event consumer started: " + group + "/" + consumer);
+        while (running) {
+            try {
+                Set<String> streams = eventLog.getStreamKeys();
+                for (String stream : streams) {
+                    if (knownStreams.add(stream)) {
+                        eventLog.ensureGroup(stream, group);
+                    }
+                }
+                if (streams.isEmpty()) {
+                    Thread.sleep(BLOCK_MILLIS);
+                    continue;
+                }
+
+                // Take over events that consumers on dead nodes were handed and never acknowledged
+                long now = System.currentTimeMillis();
+                if (now - lastClaim >= CLAIM_INTERVAL_MILLIS) {
+                    lastClaim = now;
+                    int claimed = 0;
+                    for (String stream : streams) {
+                        claimed += eventLog.claimStale(stream, group, consumer, claimIdleMillis, BATCH_SIZE);
+                    }
+                    if (claimed > 0) {
+                        System.out.println("Claimed " + claimed + " stale " + group + " events");
+                        lastPendingSweep = 0;
+                    }
+                }
+
+                // Pick up anything this consumer was handed before a crash or a failed attempt
+                if (now - lastPendingSweep >= PENDING_SWEEP_MILLIS) {
+                    lastPendingSweep = now;
+                    process(eventLog.read(group, consumer, streams, true, BATCH_SIZE, 0));
+                }
+
+                process(eventLog.read(group, consumer, streams, false, BATCH_SIZE, BLOCK_MILLIS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.err.println("Order event consumer " + group + " failed: " + e.getMessage());
+                try {
+                    Thread.sleep(BLOCK_MILLIS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void process(List<OrderEvent> events) {
+        for (OrderEvent event : events) {
+            if (event.getOrder() == null) {
+                eventLog.ack(group, event);
+                continue;
+            }
+            try {
+                handler.handle(event);
+                eventLog.ack(group, event);
+                attempts.remove(event.getId());
+            } catch (Exception e) {
+                int attempt = attempts.merge(event.getId(), 1, Integer::sum);
+                System.err.println("Failed " + group + " handling of " + event.getType() + " event " + event.getId()
+                        + " (attempt " + attempt + "): " + e.getMessage());
+                if (attempt >= MAX_ATTEMPTS) {
+                    System.err.println("Giving up on event " + event.getId() + " for " + group);
+                    eventLog.ack(group, event);
+                    attempts.remove(event.getId());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package edu.help.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import edu.help.dto.Order;
+import edu.help.dto.OrderEvent;
+import edu.help.websocket.OrderWebSocketHandler;
+import edu.help.websocket.TerminalWebSocketHandler;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import redis.clients.jedis.StreamEntryID;
+
+import static edu.help.config.NodeConfig.NODE_ID;
+
+/**
+ * Runs the order event log consumers, each on its own thread, so slow work
+ * like APNs stays off the WebSocket request path. Postgres saves go through
+ * {@link OrderOutboxDrainer} instead.
+ *
+ * Each kind of work uses one shared group, so every event is handled once by
+ * whichever node reads it; {@link edu.help.websocket.SessionRouter} carries
+ * the resulting frames to the node that holds the terminal or customer.
+ */
+@Component
+public class OrderEventDispatcher {
+
+    private final OrderEventLog eventLog;
+    private final TerminalWebSocketHandler terminalWebSocketHandler;
+    private final OrderWebSocketHandler orderWebSocketHandler;
+    private final long fanoutMaxAgeMillis;
+    private final long claimIdleMillis;
+    private final List<OrderEventConsumer> consumers = new ArrayList<>();
+
+    public OrderEventDispatcher(OrderEventLog eventLog, TerminalWebSocketHandler terminalWebSocketHandler,
+            OrderWebSocketHandler orderWebSocketHandler,
+            @Value("${orders.events.fanout-max-age-seconds:300}") long fanoutMaxAgeSeconds,
+            @Value("${orders.events.claim-idle-ms:60000}") long claimIdleMillis) {
+        this.eventLog = eventLog;
+        this.terminalWebSocketHandler = terminalWebSocketHandler;
+        this.orderWebSocketHandler = orderWebSocketHandler;
+        this.fanoutMaxAgeMillis = TimeUnit.SECONDS.toMillis(fanoutMaxAgeSeconds);
+        this.claimIdleMillis = claimIdleMillis;
+    }
+
+    @PostConstruct
+    public void start() {
+        consumers.add(new OrderEventConsumer(eventLog, "terminals", NODE_ID, this::fanOutToTerminals,
+                claimIdleMillis));
+        consumers.add(new OrderEventConsumer(eventLog, "customers", NODE_ID, this::notifyCustomer,
+                claimIdleMillis));
+
+        for (OrderEventConsumer consumer : consumers) {
+            Thread thread = new Thread(consumer, "order-events-" + consumer.getGroup());
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        consumers.forEach(OrderEventConsumer::stop);
+    }
+
+    private void fanOutToTerminals(OrderEvent event) throws Exception {
+        // Replaying a long outage is pointless; terminals resume or refresh when they reconnect
+        long age = System.currentTimeMillis() - new StreamEntryID(event.getId()).getTime();
+        if (age > fanoutMaxAgeMillis) {
+            return;
+        }
+        terminalWebSocketHandler.broadcastEvent(event);
+    }
+
+    private void notifyCustomer(OrderEvent event) throws Exception {
+        Order order = event.getOrder();
+        switch (event.getType()) {
+            case OrderEvent.ARRIVE:
+                orderWebSocketHandler.sendArrivedNotification(order.getCustomerId(), order.getEmployeeId());
+                break;
+            case OrderEvent.READY:
+            case OrderEvent.DELIVER:
+            case OrderEvent.CANCEL:
+                orderWebSocketHandler.updateCustomer(event);
+                break;
+            default:
+                // The customer already got the create response directly
+                break;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package edu.help.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.help.dto.Order;
+import edu.help.dto.OrderEvent;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.StreamEntryID;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.params.XReadGroupParams;
+import redis.clients.jedis.resps.StreamEntry;
+
+/**
+ * Durable log of order state changes: one Redis Stream per merchant, read
+ * through consumer groups so each kind of follow-up work (terminal fan-out,
+ * customer notification, persistence) tracks its own position and can pick up
+ * where it left off after a restart. Events are written in the same step as
+ * the change they describe: by {@link OrderStore#createOrder} for creates and
+ * by the transition script for everything after.
+ */
+@Service
+public class OrderEventLog {
+
+    // How long to wait between polls when streams have to be read one by one
+    private static final long CLUSTER_POLL_MILLIS = 100;
+
+    private final UnifiedJedis jedis;
+    private final OrderStore orderStore;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final int replayMax;
+
+    public OrderEventLog(UnifiedJedis jedis, OrderStore orderStore,
+            @Value("${orders.events.replay-max:500}") int replayMax) {
+        this.jedis = jedis;
+        this.orderStore = orderStore;
+        this.replayMax = replayMax;
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    public Set<String> getStreamKeys() {
+        return jedis.smembers(RedisKeys.EVENT_STREAMS);
+    }
+
+    public void ensureGroup(String streamKey, String group) {
+        RedisStreams.ensureGroup(jedis, streamKey, group);
+    }
+
+    // Moves entries another consumer of the group left idle, e.g. on a node that died, to this consumer
+    public int claimStale(String streamKey, String group, String consumer, long minIdleMillis, int count) {
+        return RedisStreams.claimStale(jedis, streamKey, group, consumer, minIdleMillis, count);
+    }
+
+    /**
+     * Reads events for a consumer across the given streams. With
+     * {@code pending} set this re-reads events delivered to this consumer but
+     * never acknowledged, otherwise it blocks for up to {@code blockMillis}
+     * waiting for new ones.
+     *
+     * On a cluster the merchant streams sit in different slots and one
+     * XREADGROUP cannot span them, so each stream is read on its own and the
+     * wait becomes a short poll.
+     */
+    public List<OrderEvent> read(String group, String consumer, Set<String> streamKeys, boolean pending,
+            int count, int blockMillis) throws InterruptedException {
+        StreamEntryID from = pending ? new StreamEntryID() : StreamEntryID.UNRECEIVED_ENTRY;
+        List<OrderEvent> events = new ArrayList<>();
+
+        if (!(jedis instanceof JedisCluster) || streamKeys.size() == 1) {
+            Map<String, StreamEntryID> streams = new HashMap<>();
+            for (String streamKey : streamKeys) {
+                streams.put(streamKey, from);
+            }
+            XReadGroupParams params = XReadGroupParams.xReadGroupParams().count(count);
+            if (!pending) {
+                params.block(blockMillis);
+            }
+            collect(jedis.xreadGroup(group, consumer, params, streams), events);
+            return events;
+        }
+
+        for (String streamKey : streamKeys) {
+            collect(jedis.xreadGroup(group, consumer, XReadGroupParams.xReadGroupParams().count(count),
+                    Map.of(streamKey, from)), events);
+        }
+        if (events.isEmpty() && !pending) {
+            Thread.sleep(Math.min(blockMillis, CLUSTER_POLL_MILLIS));
+        }
+        return events;
+    }
+
+    private void collect(List<Map.Entry<String, List<StreamEntry>>> results, List<OrderEvent> events) {
+        if (results == null) {
+            return;
+        }
+        for (Map.Entry<String, List<StreamEntry>> stream : results) {
+            for (StreamEntry entry : stream.getValue()) {
+                events.add(decode(stream.getKey(), entry));
+            }
+        }
+    }
+
+    // Id of the merchant's latest event, "0-0" if it has none; the baseline for a snapshot
+    public String lastId(int merchantId) {
+        List<StreamEntry> latest = jedis.xrevrange(RedisKeys.events(merchantId), "+", "-", 1);
+        return latest.isEmpty() ? new StreamEntryID().toString() : latest.get(0).getID().toString();
+    }
+
+    /**
+     * The merchant's events after {@code afterId}, oldest first, for a client
+     * catching up after a reconnect. Returns null if the client has to take a
+     * full snapshot instead: the stream may have been trimmed past
+     * {@code afterId}, or more than {@code orders.events.replay-max} events
+     * have happened since.
+     */
+    public List<OrderEvent> readSince(int merchantId, String afterId) {
+        String streamKey = RedisKeys.events(merchantId);
+        StreamEntryID after;
+        try {
+            after = new StreamEntryID(afterId);
+        } catch (RuntimeException e) {
+            return null;
+        }
+
+        List<StreamEntry> entries = jedis.xrange(streamKey, "(" + after, "+", replayMax + 1);
+        if (entries.size() > replayMax) {
+            return null;
+        }
+        // Checked after the read, so a trim racing it still counts as a gap
+        List<StreamEntry> oldest = jedis.xrange(streamKey, "-", "+", 1);
+        if (!oldest.isEmpty() && oldest.get(0).getID().compareTo(after) > 0) {
+            return null;
+        }
+        List<OrderEvent> events = new ArrayList<>();
+        for (StreamEntry entry : entries) {
+            OrderEvent event = decode(streamKey, entry);
+            if (event.getOrder() != null) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    public void ack(String group, OrderEvent event) {
+        jedis.xack(event.getStream(), group, new StreamEntryID(event.getId()));
+    }
+
+    private OrderEvent decode(String streamKey, StreamEntry entry) {
+        Map<String, String> fields = entry.getFields();
+        if (fields == null) {
+            // Pending entry that has since been trimmed from the stream
+            return new OrderEvent(entry.getID().toString(), streamKey, null, null);
+        }
+        try {
+            Order order = decodeOrder(fields.get("kind"), fields.get("order"));
+            return new OrderEvent(entry.getID().toString(), streamKey, fields.get("type"), order);
+        } catch (JsonProcessingException e) {
+            // Keep the Id so the entry can still be acknowledged and skipped
+            System.err.println("Failed to decode event " + entry.getID() + " on " + streamKey + ": " + e.getMessage());
+            return new OrderEvent(entry.getID().toString(), streamKey, fields.get("type"), null);
+        }
+    }
+
+    // Transition events carry the order as it sits in Redis, tagged with its type; create events plain JSON
+    private Order decodeOrder(String kind, String payload) throws JsonProcessingException {
+        if (kind == null) {
+            return objectMapper.readValue(payload, Order.class);
+        }
+        OrderCodec codec = orderStore.codecForType(kind);
+        if (codec == null) {
+            return null;
+        }
+        return codec.decode("hash".equals(kind) ? objectMapper.readValue(payload, List.class) : payload);
+    }
+}
@@ -0,0 +1,155 @@
+package edu.help.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.help.dto.Order;
+import edu.help.dto.OrderEvent;
+import redis.clients.jedis.PipelineBase;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.StreamEntryID;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.params.XAddParams;
+import redis.clients.jedis.params.XReadGroupParams;
+import redis.clients.jedis.resps.StreamEntry;
+
+/**
+ * Read side of the per-merchant Postgres outbox streams. The transition
+ * script appends every finished order; entries stay pending in the
+ * "postgres" group until saved, and are deleted once acknowledged, so the
+ * streams never need trimming and nothing is dropped while Postgres is down.
+ * Entries Postgres will never take are moved to the merchant's dead-letter
+ * stream instead.
+ */
+@Service
+public class OrderOutbox {
+
+    public static final String GROUP = "postgres";
+
+    // Dead letters kept per merchant; the oldest are trimmed beyond this
+    private static final long MAX_DEAD_LETTERS = 10_000;
+
+    private final UnifiedJedis jedis;
+    private final OrderStore orderStore;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public OrderOutbox(UnifiedJedis jedis, OrderStore orderStore) {
+        this.jedis = jedis;
+        this.orderStore = orderStore;
+    }
+
+    public Set<String> getMerchants() {
+        return jedis.smembers(RedisKeys.OUTBOX_MERCHANTS);
+    }
+
+    public void ensureGroup(int merchantId) {
+        RedisStreams.ensureGroup(jedis, RedisKeys.outbox(merchantId), GROUP);
+    }
+
+    /**
+     * Reads up to {@code count} entries from each merchant's outbox in one
+     * pipelined round trip. Each merchant reads after its own ID:
+     * {@link StreamEntryID#UNRECEIVED_ENTRY} for new entries, or any other ID
+     * for the ones past it that this consumer was handed earlier and has not
+     * acknowledged.
+     */
+    public List<OrderEvent> read(Map<Integer, StreamEntryID> after, String consumer, int count) {
+        List<Response<List<Map.Entry<String, List<StreamEntry>>>>> replies = new ArrayList<>();
+
+        try (PipelineBase pipeline = jedis.pipelined()) {
+            for (Map.Entry<Integer, StreamEntryID> merchant : after.entrySet()) {
+                replies.add(pipeline.xreadGroup(GROUP, consumer, XReadGroupParams.xReadGroupParams().count(count),
+                        Map.of(RedisKeys.outbox(merchant.getKey()), merchant.getValue())));
+            }
+            pipeline.sync();
+        }
+
+        List<OrderEvent> entries = new ArrayList<>();
+        for (Response<List<Map.Entry<String, List<StreamEntry>>>> reply : replies) {
+            List<Map.Entry<String, List<StreamEntry>>> streams = reply.get();
+            if (streams == null) {
+                continue;
+            }
+            for (Map.Entry<String, List<StreamEntry>> stream : streams) {
+                for (StreamEntry entry : stream.getValue()) {
+                    entries.add(decode(stream.getKey(), entry));
+                }
+            }
+        }
+        return entries;
+    }
+
+    public int claimStale(int merchantId, String consumer, long minIdleMillis, int count) {
+        return RedisStreams.claimStale(jedis, RedisKeys.outbox(merchantId), GROUP, consumer, minIdleMillis, count);
+    }
+
+    // Acknowledges and deletes saved entries; both commands hit the same slot
+    public void ack(Collection<OrderEvent> entries) {
+        Map<String, List<StreamEntryID>> byStream = new LinkedHashMap<>();
+        for (OrderEvent entry : entries) {
+            byStream.computeIfAbsent(entry.getStream(), k -> new ArrayList<>()).add(new StreamEntryID(entry.getId()));
+        }
+
+        try (PipelineBase pipeline = jedis.pipelined()) {
+            for (Map.Entry<String, List<StreamEntryID>> stream : byStream.entrySet()) {
+                StreamEntryID[] ids = stream.getValue().toArray(new StreamEntryID[0]);
+                pipeline.xack(stream.getKey(), GROUP, ids);
+                pipeline.xdel(stream.getKey(), ids);
+            }
+            pipeline.sync();
+        }
+    }
+
+    /**
+     * Moves entries to their merchant's dead-letter stream with the reason,
+     * then acknowledges and deletes them, all in one round trip.
+     */
+    public void deadLetter(Collection<OrderEvent> entries, String reason) throws JsonProcessingException {
+        try (PipelineBase pipeline = jedis.pipelined()) {
+            for (OrderEvent entry : entries) {
+                Map<String, String> fields = new LinkedHashMap<>();
+                fields.put("id", entry.getId());
+                fields.put("reason", reason);
+                fields.put("order", objectMapper.writeValueAsString(entry.getOrder()));
+                pipeline.xadd(RedisKeys.outboxDeadLetters(RedisKeys.merchantIdOf(entry.getStream())),
+                        XAddParams.xAddParams().maxLen(MAX_DEAD_LETTERS).approximateTrimming(), fields);
+                StreamEntryID id = new StreamEntryID(entry.getId());
+                pipeline.xack(entry.getStream(), GROUP, id);
+                pipeline.xdel(entry.getStream(), id);
+            }
+            pipeline.sync();
+        }
+    }
+
+    private OrderEvent decode(String streamKey, StreamEntry entry) {
+        String id = entry.getID().toString();
+        Map<String, String> fields = entry.getFields();
+        if (fields == null) {
+            return new OrderEvent(id, streamKey, null, null);
+        }
+
+        // The script stores the order as it sits in Redis: a JSON document, or a hash as a flat array
+        String kind = fields.get("kind");
+        OrderCodec codec = orderStore.codecForType(kind);
+        try {
+            Object raw = "hash".equals(kind) ? objectMapper.readValue(fields.get("order"), List.class)
+                    : fields.get("order");
+            Order order = codec == null ? null : codec.decode(raw);
+            String type = order != null && "delivered".equals(order.getStatus()) ? OrderEvent.DELIVER
+                    : OrderEvent.CANCEL;
+            return new OrderEvent(id, streamKey, type, order);
+        } catch (JsonProcessingException e) {
+            System.err.println("Failed to decode outbox entry " + id + " on " + streamKey + ": " + e.getMessage());
+            return new OrderEvent(id, streamKey, null, null);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package edu.help.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import edu.help.dto.OrderEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import redis.clients.jedis.StreamEntryID;
+
+import static edu.help.config.NodeConfig.NODE_ID;
+
+/**
+ * Flushes the Postgres outbox in the background. Each pass sends up to a
+ * batch of saves concurrently and acknowledges the ones that succeeded in
+ * one round trip; failed entries stay pending and are retried with
+ * exponential backoff. An entry Postgres refuses with a 4xx, or that still
+ * fails after {@code orders.outbox.max-attempts}, is moved to the
+ * merchant's dead-letter stream so it cannot hold up the rest. Saves are
+ * at-least-once, so a save can repeat if a node dies between the save and
+ * the ack.
+ *
+ * The pending list is read a page at a time, each pass carrying on after
+ * the last entry the previous one saw, so entries behind a page of
+ * backing-off ones still get their turn. Retry state for entries that left
+ * the list, e.g. claimed by another node, is dropped once a full scan of
+ * the list no longer finds them.
+ */
+@Component
+public class OrderOutboxDrainer implements Runnable {
+
+    private static final long CLAIM_INTERVAL_MILLIS = 60_000;
+
+    private static final class Retry {
+        private int attempts;
+        private long at;
+    }
+
+    // Where the scan of one stream's pending list has got to, and what it has seen since it last started over
+    private static final class PendingScan {
+        private StreamEntryID after = new StreamEntryID();
+        private final Set<String> seen = new HashSet<>();
+    }
+
+    private final OrderOutbox outbox;
+    private final PostgresClient postgresClient;
+    private final int batchSize;
+    private final long pollMillis;
+    private final long backoffMillis;
+    private final long maxBackoffMillis;
+    private final long claimIdleMillis;
+    private final int maxAttempts;
+
+    private final Set<Integer> knownMerchants = new HashSet<>();
+    // Stream key -> entry id -> retry state
+    private final Map<String, Map<String, Retry>> retries = new HashMap<>();
+    private final Map<String, PendingScan> scans = new HashMap<>();
+    private volatile boolean running = true;
+    private long nextPendingRead;
+    private long nextClaim;
+
+    public OrderOutboxDrainer(OrderOutbox outbox, PostgresClient postgresClient,
+            @Value("${orders.outbox.batch-size:50}") int batchSize,
+            @Value("${orders.outbox.poll-ms:500}") long pollMillis,
+            @Value("${orders.outbox.backoff-ms:1000}") long backoffMillis,
+            @Value("${orders.outbox.max-backoff-ms:300000}") long maxBackoffMillis,
+            @Value("${orders.outbox.claim-idle-ms:300000}") long claimIdleMillis,
+            @Value("${orders.outbox.max-attempts:10}") int maxAttempts) {
+        this.outbox = outbox;
+        this.postgresClient = postgresClient;
+        this.batchSize = batchSize;
+        this.pollMillis = pollMillis;
+        this.backoffMillis = backoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.claimIdleMillis = claimIdleMillis;
+        this.maxAttempts = maxAttempts;
+    }
+
+    @PostConstruct
+    public void start() {
+        Thread thread = new Thread(this, "order-outbox");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public void run() {
+        System.out.println("Order outbox drainer started: " + NODE_ID);
+        while (running) {
+            try {
+                if (drain() == 0) {
+                    Thread.sleep(pollMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.err.println("Order outbox drain failed: " + e.getMessage());
+                try {
+                    Thread.sleep(pollMillis);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    // One pass over every merchant's outbox; returns how many entries were attempted
+    int drain() throws JsonProcessingException {
+        List<Integer> merchantIds = new ArrayList<>();
+        for (String merchant : outbox.getMerchants()) {
+            int merchantId = Integer.parseInt(merchant);
+            if (knownMerchants.add(merchantId)) {
+                outbox.ensureGroup(merchantId);
+            }
+            merchantIds.add(merchantId);
+        }
+        if (merchantIds.isEmpty()) {
+            return 0;
+        }
+
+        long now = System.currentTimeMillis();
+        if (now >= nextClaim) {
+            nextClaim = now + CLAIM_INTERVAL_MILLIS;
+            int claimed = 0;
+            for (int merchantId : merchantIds) {
+                claimed += outbox.claimStale(merchantId, NODE_ID, claimIdleMillis, batchSize);
+            }
+            if (claimed > 0) {
+                System.out.println("Claimed " + claimed + " stale outbox entries");
+                nextPendingRead = now;
+            }
+        }
+
+        List<OrderEvent> due = new ArrayList<>();
+        boolean morePending = false;
+        if (now >= nextPendingRead) {
+            morePending = readPending(merchantIds, now, due);
+        }
+
+        Map<Integer, StreamEntryID> unread = new LinkedHashMap<>();
+        for (int merchantId : merchantIds) {
+            unread.put(merchantId, StreamEntryID.UNRECEIVED_ENTRY);
+        }
+        due.addAll(outbox.read(unread, NODE_ID, batchSize));
+
+        for (int from = 0; from < due.size(); from += batchSize) {
+            flush(due.subList(from, Math.min(from + batchSize, due.size())));
+        }
+        nextPendingRead = morePending ? now : retries.values().stream()
+                .flatMap(streamRetries -> streamRetries.values().stream())
+                .mapToLong(retry -> retry.at)
+                .min()
+                .orElse(Long.MAX_VALUE);
+        return due.size();
+    }
+
+    // Reads the next page of each pending list into due; returns whether any list has more pages
+    private boolean readPending(List<Integer> merchantIds, long now, List<OrderEvent> due) {
+        Map<Integer, StreamEntryID> after = new LinkedHashMap<>();
+        for (int merchantId : merchantIds) {
+            after.put(merchantId, scan(RedisKeys.outbox(merchantId)).after);
+        }
+        Map<String, List<OrderEvent>> pages = new HashMap<>();
+        for (OrderEvent entry : outbox.read(after, NODE_ID, batchSize)) {
+            pages.computeIfAbsent(entry.getStream(), k -> new ArrayList<>()).add(entry);
+        }
+
+        boolean morePending = false;
+        for (int merchantId : merchantIds) {
+            String stream = RedisKeys.outbox(merchantId);
+            PendingScan scan = scan(stream);
+            List<OrderEvent> page = pages.getOrDefault(stream, List.of());
+            for (OrderEvent entry : page) {
+                scan.seen.add(entry.getId());
+                Retry retry = retry(entry);
+                if (retry == null || retry.at <= now) {
+                    due.add(entry);
+                }
+            }
+            if (page.size() == batchSize) {
+                scan.after = new StreamEntryID(page.get(page.size() - 1).getId());
+                morePending = true;
+                continue;
+            }
+
+            // End of the list: whatever was not seen on the way is no longer ours
+            Map<String, Retry> streamRetries = retries.get(stream);
+            if (streamRetries != null) {
+                streamRetries.keySet().retainAll(scan.seen);
+                if (streamRetries.isEmpty()) {
+                    retries.remove(stream);
+                }
+            }
+            scan.after = new StreamEntryID();
+            scan.seen.clear();
+        }
+        return morePending;
+    }
+
+    private void flush(List<OrderEvent> batch) throws JsonProcessingException {
+        List<OrderEvent> done = new ArrayList<>();
+        List<OrderEvent> refused = new ArrayList<>();
+        List<OrderEvent> exhausted = new ArrayList<>();
+        List<OrderEvent> sent = new ArrayList<>();
+        List<CompletableFuture<Throwable>> results = new ArrayList<>();
+
+        for (OrderEvent entry : batch) {
+            if (entry.getOrder() == null) {
+                // Trimmed or unreadable; nothing left to save
+                System.err.println("Dropping unreadable outbox entry " + entry.getId() + " on " + entry.getStream());
+                done.add(entry);
+                continue;
+            }
+            sent.add(entry);
+            results.add(postgresClient.saveOrder(entry.getOrder()).handle((ok, error) -> error));
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).join();
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < sent.size(); i++) {
+            OrderEvent entry = sent.get(i);
+            Throwable error = results.get(i).join();
+            if (error == null) {
+                done.add(entry);
+                forget(entry);
+                continue;
+            }
+
+            Retry retry = retries.computeIfAbsent(entry.getStream(), k -> new HashMap<>())
+                    .computeIfAbsent(entry.getId(), k -> new Retry());
+            retry.attempts++;
+            String failure = "Failed to save order for customer " + entry.getOrder().getCustomerId()
+                    + " (attempt " + retry.attempts;
+            if (PostgresClient.isClientError(error)) {
+                System.err.println(failure + ", refused, dead-lettering): " + error.getMessage());
+                refused.add(entry);
+                forget(entry);
+            } else if (retry.attempts >= maxAttempts) {
+                System.err.println(failure + ", giving up, dead-lettering): " + error.getMessage());
+                exhausted.add(entry);
+                forget(entry);
+            } else {
+                long delay = Math.min(maxBackoffMillis, backoffMillis << Math.min(retry.attempts - 1, 20));
+                retry.at = now + delay;
+                // Still pending, so the scan that is under way must not prune it
+                scan(entry.getStream()).seen.add(entry.getId());
+                System.err.println(failure + ", retry in " + delay + "ms): " + error.getMessage());
+            }
+        }
+
+        if (!done.isEmpty()) {
+            outbox.ack(done);
+            System.out.println("Saved " + done.size() + " outbox entries to Postgres");
+        }
+        if (!refused.isEmpty()) {
+            outbox.deadLetter(refused, "refused");
+        }
+        if (!exhausted.isEmpty()) {
+            outbox.deadLetter(exhausted, "attempts");
+        }
+    }
+
+    // Entries with retry state, i.e. failed at least once and still pending here
+    int retrying() {
+        return retries.values().stream().mapToInt(Map::size).sum();
+    }
+
+    private PendingScan scan(String stream) {
+        return scans.computeIfAbsent(stream, k -> new PendingScan());
+    }
+
+    private Retry retry(OrderEvent entry) {
+        Map<String, Retry> streamRetries = retries.get(entry.getStream());
+        return streamRetries == null ? null : streamRetries.get(entry.getId());
+    }
+
+    private void forget(OrderEvent entry) {
+        Map<String, Retry> streamRetries = retries.get(entry.getStream());
+        if (streamRetries != null) {
+            streamRetries.remove(entry.getId());
+            if (streamRetries.isEmpty()) {
+                retries.remove(entry.getStream());
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package edu.help.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import edu.help.dto.Order;
+import edu.help.service.OrderTransitionService.Outcome;
+import edu.help.service.OrderTransitionService.Transition;
+import edu.help.service.OrderTransitionService.TransitionResult;
+import edu.help.websocket.TerminalWebSocketHandler;
+
+/**
+ * Cancels orders that have sat "unready" longer than the configured age, e.g.
+ * from abandoned sessions. Finished orders expire on their own through the TTL
+ * set by {@link OrderTransitionService}, so between the two the live keyspace
+ * tracks the number of open orders. Safe to run on every node: the transition
+ * script lets only one of them win each order.
+ */
+@Component
+public class OrderRetentionSweeper {
+
+    private static final int BATCH_SIZE = 100;
+
+    private final OrderStore orderStore;
+    private final OrderTransitionService orderTransitionService;
+    private final long unreadyMaxAgeMillis;
+
+    public OrderRetentionSweeper(OrderStore orderStore, OrderTransitionService orderTransitionService,
+            @Value("${orders.retention.unready-max-age-minutes:360}") long unreadyMaxAgeMinutes) {
+        this.orderStore = orderStore;
+        this.orderTransitionService = orderTransitionService;
+        this.unreadyMaxAgeMillis = TimeUnit.MINUTES.toMillis(unreadyMaxAgeMinutes);
+    }
+
+    @Scheduled(fixedDelayString = "${orders.retention.sweep-interval-ms:60000}")
+    public void sweepStaleOrders() {
+        long cutoff = System.currentTimeMillis() - unreadyMaxAgeMillis;
+
+        for (String merchant : orderStore.getOpenMerchants()) {
+            int merchantId = Integer.parseInt(merchant);
+            try {
+                sweepMerchant(merchantId, cutoff);
+
+                // Next createOrder re-adds the merchant if it races with this
+                if (orderStore.countOpenOrders(merchantId) == 0) {
+                    orderStore.removeOpenMerchant(merchantId);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void sweepMerchant(int merchantId, long cutoff) throws Exception {
+        long offset = 0;
+
+        while (true) {
+            List<String> orderKeys = orderStore.getOpenOrderKeysBefore(merchantId, cutoff, offset, BATCH_SIZE);
+            if (orderKeys.isEmpty()) {
+                return;
+            }
+
+            Map<String, Order> orders = orderStore.getOrders(orderKeys);
+            List<String> goneKeys = new ArrayList<>();
+            int kept = 0;
+
+            for (String orderKey : orderKeys) {
+                Order order = orders.get(orderKey);
+                if (order == null) {
+                    goneKeys.add(orderKey);
+                } else if ("unready".equals(order.getStatus())) {
+                    TransitionResult result = expire(order);
+                    if (result.getOutcome() == Outcome.MISSING) {
+                        goneKeys.add(orderKey);
+                    } else if (result.getOutcome() == Outcome.REJECTED && !isFinished(result.getPreviousStatus())) {
+                        // Readied since we looked, so it is still in the open set and in this range
+                        kept++;
+                    }
+                } else {
+                    // Ready or arrived orders are being worked on; leave them to the terminal
+                    kept++;
+                }
+            }
+            orderStore.removeOpenOrders(merchantId, goneKeys);
+
+            if (orderKeys.size() < BATCH_SIZE) {
+                return;
+            }
+            offset += kept;
+        }
+    }
+
+    private TransitionResult expire(Order order) throws Exception {
+        TransitionResult result = orderTransitionService.apply(order.getMerchantId(), order.getEmployeeId(),
+                order.getCustomerId(), Transition.EXPIRE);
+        if (result.getOutcome() != Outcome.APPLIED) {
+            // Someone readied or canceled it since we looked
+            return result;
+        }
+
+        System.out.println("Swept stale order for customer " + order.getCustomerId() + " at merchant "
+                + order.getMerchantId());
+        TerminalWebSocketHandler.getInstance().finishOrder(result.getOrder());
+        return result;
+    }
+
+    // Finishing transitions take the order out of the open set themselves
+    private static boolean isFinished(String status) {
+        return "delivered".equals(status) || "canceled".equals(status);
+    }
+}
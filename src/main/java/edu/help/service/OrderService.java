@@ -4,43 +4,77 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestClientException;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
-
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import edu.help.dto.Order;
+import edu.help.dto.OrderEvent;
 import edu.help.dto.OrderRequest;
 import edu.help.dto.OrderResponse;
 import edu.help.dto.ResponseWrapper;
-import edu.help.websocket.TerminalWebSocketHandler;
-import edu.help.websocket.OrderWebSocketHandler;
-import redis.clients.jedis.JedisPool;
-import redis.clients.jedis.JedisPooled;
-
-import redis.clients.jedis.params.ScanParams;
-import redis.clients.jedis.resps.ScanResult;
-import static edu.help.config.ApiConfig.FULL_HTTP_PATH;
+import edu.help.service.OrderTransitionService.Outcome;
+import edu.help.service.OrderTransitionService.Transition;
+import edu.help.service.OrderTransitionService.TransitionResult;
+import edu.help.websocket.OutboundFrames;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.exceptions.JedisException;
 
 @Service
 public class OrderService {
 
-    private final RestTemplate restTemplate;
+    private final PostgresClient postgresClient;
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final JedisPooled jedisPooled; // Redis client for simple operations
+    private final UnifiedJedis jedis; // Redis client for simple operations
+    private final OrderStore orderStore;
+    private final OrderTransitionService orderTransitionService;
+    private final OrderEventLog orderEventLog;
+    private final MerchantCatalogCache catalogCache;
+    private final long createClaimMillis;
+    private final long createResultMillis;
+
+    // Creates in flight on this node, by order key
+    private final Map<String, InFlightCreate> inFlightCreates = new ConcurrentHashMap<>();
+
+    private static final class InFlightCreate {
+        private final String idempotencyKey;
+        private final CompletableFuture<ResponseWrapper> reply = new CompletableFuture<>();
+
+        private InFlightCreate(String idempotencyKey) {
+            this.idempotencyKey = idempotencyKey;
+        }
+
+        // Older apps send no key, so for them any concurrent create counts as the same tap
+        private boolean isSameRequest(String otherKey) {
+            return idempotencyKey == null || otherKey == null || idempotencyKey.equals(otherKey);
+        }
+    }
 
-    public OrderService(RestTemplate restTemplate, JedisPooled jedisPooled, JedisPool jedisPool) {
-        this.restTemplate = restTemplate;
-        this.jedisPooled = jedisPooled;
+    public OrderService(PostgresClient postgresClient, UnifiedJedis jedis,
+            OrderStore orderStore, OrderTransitionService orderTransitionService, OrderEventLog orderEventLog,
+            MerchantCatalogCache catalogCache, @Value("${orders.create.claim-ms:30000}") long createClaimMillis,
+            @Value("${orders.create.result-ttl-ms:300000}") long createResultMillis) {
+        this.postgresClient = postgresClient;
+        this.jedis = jedis;
+        this.orderStore = orderStore;
+        this.orderTransitionService = orderTransitionService;
+        this.orderEventLog = orderEventLog;
+        this.catalogCache = catalogCache;
+        this.createClaimMillis = createClaimMillis;
+        this.createResultMillis = createResultMillis;
     }
 
     public void processOrder(OrderRequest orderRequest, WebSocketSession session) {
@@ -65,131 +99,242 @@ public class OrderService {
             return;
         }
 
+        // Items the merchant no longer sells are turned away here rather than by the backend
+        String catalogError = catalogCache.validate(orderRequest);
+        if (catalogError != null) {
+            System.out.println("Order rejected against cached catalog: " + catalogError);
+            sendOrderResponse(session, new ResponseWrapper("error", null, catalogError));
+            return;
+        }
+
         String orderKey = generateOrderKey(orderRequest);
         System.out.println("Generated order key: " + orderKey);
 
-        if (jedisPooled.exists(orderKey)) {
-            System.out.println("Order key exists in Redis: " + orderKey);
-
-            // Retrieve the JSON object as a raw object
-            Object orderJsonObj = jedisPooled.jsonGet(orderKey);
-            System.out.println("Raw JSON object retrieved: " + orderJsonObj);
-
-            if (orderJsonObj != null) {
-                // Convert the JSON object to a string
-                String orderJson;
-                try {
-                    orderJson = objectMapper.writeValueAsString(orderJsonObj);
-                    System.out.println("Order JSON string: " + orderJson);
-                } catch (JsonProcessingException e) {
-                    System.err.println("Failed to serialize existing order data: " + e.getMessage());
-                    sendOrderResponse(session, new ResponseWrapper(
-                            "error",
-                            null,
-                            "Failed to process existing order data."));
-                    return;
-                }
+        // A double tap or a retry while the first create is still running shares its reply
+        InFlightCreate create = new InFlightCreate(orderRequest.getIdempotencyKey());
+        InFlightCreate first = inFlightCreates.putIfAbsent(orderKey, create);
+        if (first != null) {
+            if (first.isSameRequest(orderRequest.getIdempotencyKey())) {
+                System.out.println("Attaching duplicate create to the one in flight for key: " + orderKey);
+                first.reply.thenAccept(reply -> sendOrderResponse(session, reply));
+            } else {
+                sendOrderResponse(session, orderInProgress());
+            }
+            return;
+        }
 
-                // Deserialize the string back into an Order object
-                Order existingOrder;
-                try {
-                    existingOrder = objectMapper.readValue(orderJson, Order.class);
-                    System.out.println("Deserialized Order object: " + existingOrder);
-                } catch (JsonProcessingException e) {
-                    System.err.println("Failed to deserialize existing order data: " + e.getMessage());
-                    sendOrderResponse(session, new ResponseWrapper(
+        create.reply.thenAccept(reply -> {
+            inFlightCreates.remove(orderKey, create);
+            sendOrderResponse(session, reply);
+        });
+        // However the create ends, the reply completes, so the in-flight entry is always removed
+        try {
+            submitOrder(orderRequest, orderKey, session.getId()).whenComplete((reply, error) -> {
+                if (error != null) {
+                    error.printStackTrace();
+                    create.reply.complete(new ResponseWrapper(
                             "error",
                             null,
-                            "Failed to process existing order data."));
-                    return;
+                            "Failed to process order data."));
+                } else {
+                    create.reply.complete(reply);
                 }
+            });
+        } catch (JedisException e) {
+            e.printStackTrace();
+            create.reply.complete(new ResponseWrapper(
+                    "error",
+                    null,
+                    "Sorry, it looks like our servers are down. Check back later!"));
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            create.reply.complete(new ResponseWrapper(
+                    "error",
+                    null,
+                    "Failed to process order data."));
+        }
+    }
 
-                // Check the status of the existing order
-                String existingStatus = existingOrder.getStatus();
-                System.out.println("Existing order status: " + existingStatus);
+    private CompletableFuture<ResponseWrapper> submitOrder(OrderRequest orderRequest, String orderKey,
+            String sessionId) {
+        String idempotencyKey = orderRequest.getIdempotencyKey() != null
+                ? orderRequest.getIdempotencyKey()
+                : UUID.randomUUID().toString();
 
-                if (!"delivered".equals(existingStatus) && !"canceled".equals(existingStatus)) {
-                    System.out.println("Order already in progress, status: " + existingStatus);
-                    sendOrderResponse(session, new ResponseWrapper(
-                            "error",
-                            null,
-                            "Order already in progress. Please cancel the current order before placing a new one."));
-                    return;
-                }
+        // Claim before the status check, so a create finishing on another node is always seen
+        if (!orderStore.claimCreate(orderKey, idempotencyKey, createClaimMillis)) {
+            System.out.println("Create already in flight on another node for key: " + orderKey);
+            return CompletableFuture.completedFuture(orderInProgress());
+        }
+
+        // A retry of a create that already finished, e.g. after a reconnect, gets the original reply
+        String existingStatus;
+        try {
+            ResponseWrapper previous = previousCreate(orderKey, orderRequest.getIdempotencyKey());
+            if (previous != null) {
+                System.out.println("Replaying finished create for key: " + orderKey);
+                releaseCreate(orderKey, idempotencyKey);
+                return CompletableFuture.completedFuture(previous);
+            }
+
+            // Only the status is needed here, so project it instead of loading the whole order
+            existingStatus = orderStore.getStatus(orderKey);
+        } catch (RuntimeException e) {
+            releaseCreate(orderKey, idempotencyKey);
+            throw e;
+        }
+
+        if (existingStatus != null) {
+            System.out.println("Existing order status: " + existingStatus);
+
+            if (!"delivered".equals(existingStatus) && !"canceled".equals(existingStatus)) {
+                System.out.println("Order already in progress, status: " + existingStatus);
+                releaseCreate(orderKey, idempotencyKey);
+                return CompletableFuture.completedFuture(orderInProgress());
             }
         }
 
         System.out.println(
                 "No existing order in progress or status is 'delivered' or 'canceled'. Proceeding with order processing.");
 
+        // Send order request to PostgreSQL; the rest runs when it answers, off this thread
+        CompletableFuture<OrderResponse> response;
         try {
-            // Send order request to PostgreSQL
-            OrderResponse orderResponse = restTemplate.postForObject(
-                    FULL_HTTP_PATH + "/employee/" + orderRequest.getMerchantId() + "/processOrder",
-                    orderRequest,
-                    OrderResponse.class);
-
+            response = postgresClient.processOrder(orderRequest);
+        } catch (RuntimeException e) {
+            releaseCreate(orderKey, idempotencyKey);
+            throw e;
+        }
+        return response.handle((orderResponse, error) -> {
             try {
-                System.out.println("[DEBUG] OrderResponse received from backend: "
-                        + objectMapper.writeValueAsString(orderResponse));
-            } catch (JsonProcessingException e) {
-                System.err.println("[ERROR] Failed to serialize OrderResponse: " + e.getMessage());
-            }
-
-            if (orderResponse != null) {
-                Order order = new Order(
-                        orderResponse.getName(),                   
-                        orderRequest.getMerchantId(),
-                        orderRequest.getCustomerId(),
-                        orderRequest.getEmployeeId(),
-                        orderResponse.getTotalPrice(), // Using the total price from the response
-                        orderResponse.getTotalPointPrice(),
-                        orderResponse.getTotalGratuity(),
-                        orderResponse.getTotalServiceFee(),
-                        orderResponse.getTotalTax(),
-                        orderResponse.isInAppPayments(), // Assuming this is from the request
-                        convertItemsToOrders(orderResponse.getItems()),
-                        orderRequest.getPointOfSale(),
-                        "unready",
-                        orderResponse.getTimestamp(),
-                        session.getId());
-
-                if (!"error".equals(orderResponse.getMessageType())) {
-
-                    jedisPooled.jsonSetWithEscape(orderKey, order);
-                    System.out.println("Stored order in Redis with key: " + orderKey);
-
-                    sendOrderResponse(session, new ResponseWrapper(
-                            "create",
-                            order,
-                            "Order successfully processed."));
-
-                    // OrderWebSocketHandler.getInstance().sendCreateNotification(orderRequest);
-
-                    // Broadcast the order to terminals
-                    Map<String, Object> data = new HashMap<>();
-                    data.put("orders", Collections.singletonList(order));
-                    try {
-                        TerminalWebSocketHandler.getInstance().broadcastToEmployee(orderRequest.getEmployeeId(), data);
-                        System.out.println("Sent order to terminal");
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                } else {
-                    // Handle insufficient points or other errors
-                    System.out.println("Order failed: " + orderResponse.getMessage());
-                    sendOrderResponse(session, new ResponseWrapper(
+                if (error != null) {
+                    System.err.println("processOrder call failed: " + error.getMessage());
+                    return new ResponseWrapper(
                             "error",
-                            order,
-                            orderResponse.getMessage()));
+                            null,
+                            "Sorry, it looks like our servers are down. Check back later!");
                 }
+                ResponseWrapper reply = completeOrder(orderRequest, orderKey, orderResponse, sessionId);
+                rememberCreate(orderKey, orderRequest.getIdempotencyKey(), reply);
+                return reply;
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                return new ResponseWrapper(
+                        "error",
+                        null,
+                        "Failed to process order data.");
+            } finally {
+                releaseCreate(orderKey, idempotencyKey);
             }
-        } catch (RestClientException e) {
-            e.printStackTrace();
-            sendOrderResponse(session, new ResponseWrapper(
+        });
+    }
+
+    private ResponseWrapper completeOrder(OrderRequest orderRequest, String orderKey, OrderResponse orderResponse,
+            String sessionId) {
+        try {
+            System.out.println("[DEBUG] OrderResponse received from backend: "
+                    + objectMapper.writeValueAsString(orderResponse));
+        } catch (JsonProcessingException e) {
+            System.err.println("[ERROR] Failed to serialize OrderResponse: " + e.getMessage());
+        }
+
+        if (orderResponse == null) {
+            return null;
+        }
+
+        Order order = new Order(
+                orderResponse.getName(),                   
+                orderRequest.getMerchantId(),
+                orderRequest.getCustomerId(),
+                orderRequest.getEmployeeId(),
+                orderResponse.getTotalPrice(), // Using the total price from the response
+                orderResponse.getTotalPointPrice(),
+                orderResponse.getTotalGratuity(),
+                orderResponse.getTotalServiceFee(),
+                orderResponse.getTotalTax(),
+                orderResponse.isInAppPayments(), // Assuming this is from the request
+                convertItemsToOrders(orderResponse.getItems()),
+                orderRequest.getPointOfSale(),
+                "unready",
+                orderResponse.getTimestamp(),
+                sessionId);
+        order.setVersion(1);
+
+        if ("error".equals(orderResponse.getMessageType())) {
+            // Handle insufficient points or other errors
+            System.out.println("Order failed: " + orderResponse.getMessage());
+            return new ResponseWrapper(
+                    "error",
+                    order,
+                    orderResponse.getMessage());
+        }
+
+        try {
+            orderStore.createOrder(orderKey, order);
+        } catch (JsonProcessingException e) {
+            System.err.println("Failed to serialize new order: " + e.getMessage());
+            return new ResponseWrapper(
                     "error",
                     null,
-                    "Sorry, it looks like our servers are down. Check back later!"));
+                    "Failed to process order data.");
+        }
+        System.out.println("Stored order in Redis with key: " + orderKey);
+
+        // OrderWebSocketHandler.getInstance().sendCreateNotification(orderRequest);
+        // Terminals pick the order up from the create event written alongside it
+
+        return createdReply(order);
+    }
+
+    private ResponseWrapper previousCreate(String orderKey, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return null;
+        }
+        String orderJson = orderStore.getCreateResult(orderKey, idempotencyKey);
+        if (orderJson == null) {
+            return null;
+        }
+        try {
+            return createdReply(objectMapper.readValue(orderJson, Order.class));
+        } catch (JsonProcessingException e) {
+            System.err.println("Failed to read saved create for " + orderKey + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Only successful creates are kept; a failed one can simply be tried again
+    private void rememberCreate(String orderKey, String idempotencyKey, ResponseWrapper reply) {
+        if (idempotencyKey == null || reply == null || !"create".equals(reply.getMessageType())) {
+            return;
+        }
+        try {
+            orderStore.saveCreateResult(orderKey, idempotencyKey, objectMapper.writeValueAsString(reply.getData()),
+                    createResultMillis);
+        } catch (JsonProcessingException | JedisException e) {
+            System.err.println("Failed to save create result for " + orderKey + ": " + e.getMessage());
+        }
+    }
+
+    private ResponseWrapper createdReply(Order order) {
+        return new ResponseWrapper(
+                "create",
+                order,
+                "Order successfully processed.");
+    }
+
+    private ResponseWrapper orderInProgress() {
+        return new ResponseWrapper(
+                "error",
+                null,
+                "Order already in progress. Please cancel the current order before placing a new one.");
+    }
+
+    // The claim also expires on its own, so a failed release only delays the next create
+    private void releaseCreate(String orderKey, String idempotencyKey) {
+        try {
+            orderStore.releaseCreate(orderKey, idempotencyKey);
+        } catch (JedisException e) {
+            System.err.println("Failed to release create claim for " + orderKey + ": " + e.getMessage());
         }
     }
 
@@ -203,20 +348,25 @@ public class OrderService {
                 .toList();
     }
 
-   private String generateOrderKey(OrderRequest orderRequest) {
-    return String.format("%d.%d.%d",
-        orderRequest.getMerchantId(),
-        orderRequest.getEmployeeId(),
-        orderRequest.getCustomerId()
-    );
-}
+    private String generateOrderKey(OrderRequest orderRequest) {
+        return RedisKeys.order(
+                orderRequest.getMerchantId(),
+                orderRequest.getEmployeeId(),
+                orderRequest.getCustomerId());
+    }
 
     private void sendOrderResponse(WebSocketSession session, ResponseWrapper responseWrapper) {
+        if (responseWrapper == null) {
+            return;
+        }
         try {
-            String jsonResponse = objectMapper.writeValueAsString(responseWrapper);
-            session.sendMessage(new TextMessage(jsonResponse));
+            // Sessions come wrapped in a concurrent send queue, so HTTP client threads can reply directly
+            session.sendMessage(OutboundFrames.response(session, responseWrapper));
         } catch (IOException e) {
             e.printStackTrace();
+        } catch (SessionLimitExceededException e) {
+            // The outbound queue has closed the session; the client reconnects and refreshes
+            System.err.println("Dropped reply to slow session " + session.getId() + ": " + e.getMessage());
         }
     }
 
@@ -237,165 +387,147 @@ public class OrderService {
     }
 
     public void refreshOrdersForCustomer(int customerId, WebSocketSession session) {
-        ScanParams scanParams = new ScanParams().match("*.*." + customerId);
-        String cursor = "0";
-        List<Order> orders = new ArrayList<>();
+        refreshOrdersForCustomer(customerId, session, Collections.emptyMap());
+    }
 
-        try {
-            do {
-                ScanResult<String> scanResult = jedisPooled.scan(cursor, scanParams);
-                cursor = scanResult.getCursor();
+    /**
+     * Points the customer's open orders at this session and brings the app up
+     * to date. At each merchant in {@code resumeFrom} (merchantId -> seq of
+     * the last update the app saw there) only the customer's events since
+     * then are replayed; orders anywhere else, or where the merchant's stream
+     * no longer reaches back that far, are sent in full with the seq to
+     * resume from next time.
+     */
+    public void refreshOrdersForCustomer(int customerId, WebSocketSession session, Map<String, Object> resumeFrom) {
+        Map<String, Order> orders = new LinkedHashMap<>();
+        List<String> staleKeys = new ArrayList<>();
+        Map<Integer, String> seqs = new HashMap<>();
 
-                for (String key : scanResult.getResult()) {
-                    String type = jedisPooled.type(key);
-                    System.out.println("Data type of key: " + type);
+        try {
+            // One index read plus one batched fetch, regardless of keyspace size
+            Set<String> orderKeys = orderStore.getCustomerOrderKeys(customerId);
 
-                    if ("ReJSON-RL".equals(type)) {
-                        Object jsonObject = jedisPooled.jsonGet(key);
+            // Stream positions are read before the orders, so resuming from them can repeat a change but never miss one
+            for (String key : orderKeys) {
+                seqs.computeIfAbsent(RedisKeys.merchantIdOf(key), orderEventLog::lastId);
+            }
+            Map<String, Order> indexedOrders = orderStore.getOrders(orderKeys);
 
-                        System.out.println("Raw JSON from Redis: " + jsonObject);
+            for (String key : orderKeys) {
+                Order order = indexedOrders.get(key);
 
-                        if (jsonObject != null) {
-                            Map<String, Object> orderMap = objectMapper.convertValue(jsonObject,
-                                    new TypeReference<Map<String, Object>>() {
-                                    });
+                // Drop index entries whose order is gone or already finished
+                if (order == null) {
+                    System.out.println("Removing stale index entry for key: " + key);
+                    staleKeys.add(key);
+                    continue;
+                }
 
-                                 String status = (String) orderMap.get("status");
-                        if ("delivered".equalsIgnoreCase(status) || "canceled".equalsIgnoreCase(status)) continue;
+                String status = order.getStatus();
+                if ("delivered".equalsIgnoreCase(status) || "canceled".equalsIgnoreCase(status)) {
+                    staleKeys.add(key);
+                    continue;
+                }
 
-                            orderMap.put("sessionId", session.getId());
+                order.setSessionId(session.getId());
+                orders.put(key, order);
+            }
 
-                            // Convert the modified Map back to a JSON string
-                            String updatedJsonString = objectMapper.writeValueAsString(orderMap);
+            orderStore.unindexCustomerOrders(customerId, staleKeys);
 
-                            // Store the updated JSON string back in Redis under the same key
-                            jedisPooled.jsonSet(key, updatedJsonString);
+            // Point the orders at this session with path-level updates in a single pipeline
+            orderStore.setSessionIds(orders.keySet(), session.getId());
+            System.out.println("Updated sessionId in Redis for keys: " + orders.keySet());
 
-                            System.out.println("Updated sessionId in Redis for key: " + key);
+            Set<Integer> resumed = resumeCustomer(customerId, session, resumeFrom);
 
-                            // Convert the updated JSON string to an Order object
-                            Order order = objectMapper.readValue(updatedJsonString, Order.class);
-                            // Add the order to the list of orders to be returned
-                            orders.add(order);
-                        }
-                    } else {
-                        System.err.println("Skipping key with unsupported type: " + key);
-                    }
-                }
-            } while (!"0".equals(cursor));
-
-            if (orders.isEmpty()) {
+            if (orders.isEmpty() && resumed.isEmpty()) {
                 sendOrderResponse(session, new ResponseWrapper(
                         "info",
                         null,
                         "No orders found for the customer."));
             } else {
-                for (Order order : orders) {
+                for (Order order : orders.values()) {
+                    if (resumed.contains(order.getMerchantId())) {
+                        continue;
+                    }
                     sendOrderResponse(session, new ResponseWrapper(
                             "refresh",
                             order,
-                            "Order details retrieved successfully."));
+                            "Order details retrieved successfully.",
+                            seqs.get(order.getMerchantId())));
                 }
             }
 
-        } catch (IOException e) {
+        } catch (JedisException e) {
             e.printStackTrace();
             sendErrorResponse(session, "Failed to retrieve orders.");
         }
     }
 
-    public void arriveOrder(WebSocketSession session, int merchantId, int customerId, int employeeId) {
-
-        System.out.println("ArrivingOrder order for merchantId: " + merchantId);
-
-        String orderKey = merchantId + "." + employeeId + "." + customerId;
-        Order existingOrder = null;
-
-        System.out.println("Parsed order key: " + orderKey);
-
-        if (jedisPooled.exists(orderKey)) {
-            System.out.println("Order key exists in Redis: " + orderKey);
+    // Replays the customer's missed events; returns the merchants it could resume at
+    private Set<Integer> resumeCustomer(int customerId, WebSocketSession session, Map<String, Object> resumeFrom) {
+        Set<Integer> resumed = new HashSet<>();
+        boolean useDeltas = OutboundFrames.acceptsDeltas(session);
 
-            // Retrieve the JSON object as a raw object
-            Object orderJsonObj = jedisPooled.jsonGet(orderKey);
-            System.out.println("Raw JSON object retrieved: " + orderJsonObj);
-
-            if (orderJsonObj != null) {
-                // Convert the JSON object to a string
-                String orderJson;
-                try {
-                    orderJson = objectMapper.writeValueAsString(orderJsonObj);
-                    System.out.println("Order JSON string: " + orderJson);
-                } catch (JsonProcessingException e) {
-                    System.err.println("Failed to serialize existing order data: " + e.getMessage());
-                    sendOrderResponse(session, new ResponseWrapper(
-                            "error",
-                            null,
-                            "Failed to process existing order data."));
-                    return;
-                }
-
-                // Deserialize the string back into an Order object
-                try {
-                    existingOrder = objectMapper.readValue(orderJson, Order.class);
-                    System.out.println("Deserialized Order object: " + existingOrder);
-                } catch (JsonProcessingException e) {
-                    System.err.println("Failed to deserialize existing order data: " + e.getMessage());
-                    sendOrderResponse(session, new ResponseWrapper(
-                            "error",
-                            null,
-                            "Failed to process existing order data."));
-                    return;
-                }
-
-                // Check the status of the existing order
-                String existingStatus = existingOrder.getStatus();
-                System.out.println("Existing order status: " + existingStatus);
+        for (Map.Entry<String, Object> entry : resumeFrom.entrySet()) {
+            int merchantId;
+            try {
+                merchantId = Integer.parseInt(entry.getKey());
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            List<OrderEvent> events = entry.getValue() instanceof String seq
+                    ? orderEventLog.readSince(merchantId, seq) : null;
+            if (events == null) {
+                continue; // Rolled over; this merchant's orders go out in full
+            }
+            resumed.add(merchantId);
 
-                if (!"ready".equals(existingStatus)) {
-                    System.out.println("Order not ready : status=" + existingStatus);
-                    sendOrderResponse(session, new ResponseWrapper(
-                            "error",
-                            null,
-                            "Your order is not ready!"));
-                    return;
+            for (OrderEvent event : events) {
+                if (event.getOrder().getCustomerId() != customerId) {
+                    continue;
                 }
+                // A created order is new to the app, so it always goes out in full
+                boolean delta = useDeltas && !OrderEvent.CREATE.equals(event.getType());
+                sendOrderResponse(session, OutboundFrames.customerUpdate(event, delta));
             }
         }
+        return resumed;
+    }
 
-        System.out.println(
-                "Order confirmed exists and is ready. Marking as arrived...");
-        try {
-            assert existingOrder != null;
-            existingOrder.setStatus("arrived");
+    public void arriveOrder(WebSocketSession session, int merchantId, int customerId, int employeeId) {
 
-            jedisPooled.jsonSetWithEscape(orderKey, existingOrder);
-            System.out.println("Re-Stored order in Redis with key: " + orderKey);
+        System.out.println("ArrivingOrder order for merchantId: " + merchantId);
 
+        // Status check and update happen atomically inside Redis
+        TransitionResult result;
+        try {
+            result = orderTransitionService.apply(merchantId, employeeId, customerId, Transition.ARRIVE);
+        } catch (JsonProcessingException e) {
+            System.err.println("Failed to deserialize arrived order data: " + e.getMessage());
             sendOrderResponse(session, new ResponseWrapper(
-                    "update",
-                    existingOrder,
-                    "Marked as arrived."));
-
-            OrderWebSocketHandler.getInstance().sendArrivedNotification(customerId, existingOrder.getEmployeeId());
-
-            // Broadcast the order to terminals
-            Map<String, Object> data = new HashMap<>();
-            data.put("orders", Collections.singletonList(existingOrder));
-            try {
-                TerminalWebSocketHandler.getInstance().broadcastToEmployee(existingOrder.getEmployeeId(), data);
-                System.out.println("Notified Terminals that person is arrived");
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+                    "error",
+                    null,
+                    "Failed to process existing order data."));
+            return;
+        }
 
-        } catch (RestClientException e) {
-            e.printStackTrace();
+        if (result.getOutcome() != Outcome.APPLIED) {
+            System.out.println("Order not ready : status=" + result.getPreviousStatus());
             sendOrderResponse(session, new ResponseWrapper(
                     "error",
                     null,
-                    "Sorry, it looks like our servers are down. Check back later!"));
+                    "Your order is not ready!"));
+            return;
         }
 
+        Order existingOrder = result.getOrder();
+        System.out.println("Marked order as arrived: " + existingOrder);
+
+        sendOrderResponse(session, OutboundFrames.acceptsDeltas(session)
+                ? new ResponseWrapper("delta", OrderTransitionService.statusDelta(existingOrder), "Marked as arrived.")
+                : new ResponseWrapper("update", existingOrder, "Marked as arrived."));
+        // The arrived push and the terminal broadcast follow from the event the transition logged
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,369 @@
+package edu.help.service;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.help.dto.Order;
+import edu.help.dto.OrderEvent;
+import redis.clients.jedis.PipelineBase;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.params.SetParams;
+import redis.clients.jedis.params.XAddParams;
+import redis.clients.jedis.params.ZAddParams;
+
+/**
+ * Owns the Redis layout for active orders and the secondary indexes kept
+ * alongside them, so callers never have to SCAN the keyspace to find orders.
+ */
+@Service
+public class OrderStore {
+
+    // KEYS[1] = order key
+    // ARGV[1] = type the order was read as, ARGV[2] = status it was read with,
+    // ARGV[3] = type to rewrite it as, ARGV[4..] = encoded order for that type
+    private static final LuaScript MIGRATE_SCRIPT = new LuaScript("""
+            local kind = redis.call('TYPE', KEYS[1]).ok
+            if kind ~= ARGV[1] then
+              return 0
+            end
+            local status
+            if kind == 'hash' then
+              status = redis.call('HGET', KEYS[1], 'status')
+            else
+              status = cjson.decode(redis.call('JSON.GET', KEYS[1], '$.status'))[1]
+            end
+            if status ~= ARGV[2] then
+              return 0
+            end
+            local ttl = redis.call('PTTL', KEYS[1])
+            redis.call('DEL', KEYS[1])
+            if ARGV[3] == 'hash' then
+              redis.call('HSET', KEYS[1], unpack(ARGV, 4))
+            else
+              redis.call('JSON.SET', KEYS[1], '$', ARGV[4])
+            end
+            if ttl > 0 then
+              redis.call('PEXPIRE', KEYS[1], ttl)
+            end
+            return 1
+            """);
+
+    // KEYS[1] = create claim, ARGV[1] = idempotency key it was claimed with
+    private static final LuaScript RELEASE_CREATE_SCRIPT = new LuaScript("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+              return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """);
+
+    private final UnifiedJedis jedis;
+    private final OrderCodec codec;
+    private final OrderCodec legacyCodec;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final long eventsMaxLen;
+
+    public OrderStore(UnifiedJedis jedis, @Value("${orders.storage.format:json}") String storageFormat,
+            @Value("${orders.events.max-len:1000}") long eventsMaxLen) {
+        this.jedis = jedis;
+        this.eventsMaxLen = eventsMaxLen;
+
+        OrderCodec json = new JsonOrderCodec();
+        OrderCodec hash = new HashOrderCodec();
+        if (hash.name().equalsIgnoreCase(storageFormat)) {
+            this.codec = hash;
+            this.legacyCodec = json;
+        } else if (json.name().equalsIgnoreCase(storageFormat)) {
+            this.codec = json;
+            this.legacyCodec = hash;
+        } else {
+            throw new IllegalArgumentException("Unknown orders.storage.format: " + storageFormat);
+        }
+        System.out.println("Storing orders as " + codec.name());
+    }
+
+    // Codec for a Redis TYPE reply, or null if orders are never stored that way
+    public OrderCodec codecForType(String redisType) {
+        if (codec.redisType().equals(redisType)) {
+            return codec;
+        }
+        return legacyCodec.redisType().equals(redisType) ? legacyCodec : null;
+    }
+
+    /**
+     * Writes a new order, replacing whatever finished order was under the key,
+     * adds it to the customer index, its terminal's timestamp-ordered index
+     * and the merchant's open set, and appends the create event for the
+     * terminals. All in one pipelined round trip, so a stored order is never
+     * left without its event by a failure in between. Against a cluster the
+     * pipeline is split per node, since the customer index lives outside the
+     * merchant's slot.
+     */
+    public void createOrder(String orderKey, Order order) throws JsonProcessingException {
+        Map<String, String> event = new HashMap<>();
+        event.put("type", OrderEvent.CREATE);
+        event.put("order", objectMapper.writeValueAsString(order));
+        String eventStream = RedisKeys.events(order.getMerchantId());
+
+        try (PipelineBase pipeline = jedis.pipelined()) {
+            pipeline.del(orderKey);
+            codec.write(pipeline, orderKey, order);
+            pipeline.sadd(RedisKeys.customerOrders(order.getCustomerId()), orderKey);
+            pipeline.zadd(RedisKeys.terminalOrders(order.getMerchantId(), order.getEmployeeId()),
+                    orderScore(order), orderKey, ZAddParams.zAddParams().nx());
+            pipeline.zadd(RedisKeys.openOrders(order.getMerchantId()), orderScore(order), orderKey,
+                    ZAddParams.zAddParams().nx());
+            pipeline.sadd(RedisKeys.OPEN_MERCHANTS, String.valueOf(order.getMerchantId()));
+            pipeline.sadd(RedisKeys.OUTBOX_MERCHANTS, String.valueOf(order.getMerchantId()));
+            pipeline.xadd(eventStream, XAddParams.xAddParams().maxLen(eventsMaxLen).approximateTrimming(), event);
+            pipeline.sadd(RedisKeys.EVENT_STREAMS, eventStream);
+            pipeline.sync();
+        }
+    }
+
+    public void unindexCustomerOrders(int customerId, Collection<String> orderKeys) {
+        if (!orderKeys.isEmpty()) {
+            jedis.srem(RedisKeys.customerOrders(customerId), orderKeys.toArray(new String[0]));
+        }
+    }
+
+    public Set<String> getCustomerOrderKeys(int customerId) {
+        return jedis.smembers(RedisKeys.customerOrders(customerId));
+    }
+
+    public void unindexEmployeeOrders(int merchantId, int employeeId, Collection<String> orderKeys) {
+        if (!orderKeys.isEmpty()) {
+            jedis.zrem(RedisKeys.terminalOrders(merchantId, employeeId), orderKeys.toArray(new String[0]));
+        }
+    }
+
+    /**
+     * Returns a terminal's open order keys oldest-first. A {@code limit} of zero
+     * or less returns everything from {@code offset} onwards.
+     */
+    public List<String> getEmployeeOrderKeys(int merchantId, int employeeId, long offset, long limit) {
+        long stop = limit > 0 ? offset + limit - 1 : -1;
+        return jedis.zrange(RedisKeys.terminalOrders(merchantId, employeeId), offset, stop);
+    }
+
+    public long countEmployeeOrders(int merchantId, int employeeId) {
+        return jedis.zcard(RedisKeys.terminalOrders(merchantId, employeeId));
+    }
+
+    // Merchants that have had open orders since the sweep last found them empty
+    public Set<String> getOpenMerchants() {
+        return jedis.smembers(RedisKeys.OPEN_MERCHANTS);
+    }
+
+    public void removeOpenMerchant(int merchantId) {
+        jedis.srem(RedisKeys.OPEN_MERCHANTS, String.valueOf(merchantId));
+    }
+
+    // A merchant's open order keys created before the cutoff (epoch millis), oldest first
+    public List<String> getOpenOrderKeysBefore(int merchantId, long cutoffMillis, long offset, int count) {
+        return jedis.zrangeByScore(RedisKeys.openOrders(merchantId), Double.NEGATIVE_INFINITY, cutoffMillis,
+                (int) offset, count);
+    }
+
+    public long countOpenOrders(int merchantId) {
+        return jedis.zcard(RedisKeys.openOrders(merchantId));
+    }
+
+    public void removeOpenOrders(int merchantId, Collection<String> orderKeys) {
+        if (!orderKeys.isEmpty()) {
+            jedis.zrem(RedisKeys.openOrders(merchantId), orderKeys.toArray(new String[0]));
+        }
+    }
+
+    // Orders are ranked by creation time; fall back to now if the backend sent something unparsable
+    private double orderScore(Order order) {
+        String timestamp = order.getTimestamp();
+        if (timestamp != null) {
+            try {
+                return Long.parseLong(timestamp);
+            } catch (NumberFormatException e) {
+                try {
+                    return Instant.parse(timestamp).toEpochMilli();
+                } catch (DateTimeParseException ignored) {
+                    System.err.println("Unrecognized order timestamp: " + timestamp);
+                }
+            }
+        }
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Fetches several orders in one pipelined round trip. Keys that no longer
+     * exist are left out of the result; iteration order follows {@code orderKeys}.
+     * Orders still stored in the other format are converted on the way.
+     */
+    public Map<String, Order> getOrders(Collection<String> orderKeys) {
+        Map<String, Order> orders = new LinkedHashMap<>();
+        if (orderKeys.isEmpty()) {
+            return orders;
+        }
+
+        Map<String, Response<?>> replies = new LinkedHashMap<>();
+        try (PipelineBase pipeline = jedis.pipelined()) {
+            for (String orderKey : orderKeys) {
+                replies.put(orderKey, codec.read(pipeline, orderKey));
+            }
+            pipeline.sync();
+        }
+
+        List<String> legacyKeys = new ArrayList<>();
+        for (Map.Entry<String, Response<?>> reply : replies.entrySet()) {
+            try {
+                Order order = codec.decode(reply.getValue().get());
+                if (order != null) {
+                    orders.put(reply.getKey(), order);
+                }
+            } catch (JedisDataException e) {
+                // WRONGTYPE: written before the storage format was switched
+                legacyKeys.add(reply.getKey());
+            } catch (JsonProcessingException e) {
+                System.err.println("Failed to deserialize order for key: " + reply.getKey() + " - " + e.getMessage());
+            }
+        }
+
+        if (legacyKeys.isEmpty()) {
+            return orders;
+        }
+        Map<String, Order> migrated = migrate(legacyKeys);
+        Map<String, Order> ordered = new LinkedHashMap<>();
+        for (String orderKey : orderKeys) {
+            Order order = orders.containsKey(orderKey) ? orders.get(orderKey) : migrated.get(orderKey);
+            if (order != null) {
+                ordered.put(orderKey, order);
+            }
+        }
+        return ordered;
+    }
+
+    // Reads orders in the legacy format and rewrites them in the current one
+    private Map<String, Order> migrate(List<String> legacyKeys) {
+        Map<String, Response<?>> replies = new LinkedHashMap<>();
+        try (PipelineBase pipeline = jedis.pipelined()) {
+            for (String orderKey : legacyKeys) {
+                replies.put(orderKey, legacyCodec.read(pipeline, orderKey));
+            }
+            pipeline.sync();
+        }
+
+        Map<String, Order> orders = new LinkedHashMap<>();
+        for (Map.Entry<String, Response<?>> reply : replies.entrySet()) {
+            String orderKey = reply.getKey();
+            try {
+                Order order = legacyCodec.decode(reply.getValue().get());
+                if (order == null) {
+                    continue;
+                }
+                orders.put(orderKey, order);
+
+                // Only swaps the format if nobody changed the status since we read it
+                List<String> args = new ArrayList<>(Arrays.asList(
+                        legacyCodec.redisType(), String.valueOf(order.getStatus()), codec.redisType()));
+                args.addAll(codec.encodeArgs(order));
+                Object swapped = MIGRATE_SCRIPT.eval(jedis, List.of(orderKey), args);
+                System.out.println("Migrated order " + orderKey + " from " + legacyCodec.name() + " to "
+                        + codec.name() + ": " + (Long.valueOf(1).equals(swapped) ? "done" : "skipped"));
+            } catch (JedisDataException | JsonProcessingException e) {
+                System.err.println("Failed to migrate order for key: " + orderKey + " - " + e.getMessage());
+            }
+        }
+        return orders;
+    }
+
+    /**
+     * Marks a create for the order as in flight, so a duplicate arriving on
+     * another node does not charge the customer twice. Returns false if some
+     * request already holds the claim. The TTL frees it if this node dies
+     * mid-create.
+     */
+    public boolean claimCreate(String orderKey, String idempotencyKey, long ttlMillis) {
+        return "OK".equals(jedis.set(RedisKeys.createClaim(orderKey), idempotencyKey,
+                SetParams.setParams().nx().px(ttlMillis)));
+    }
+
+    // Only drops the claim if it is still ours; once it has expired another node may hold it
+    public void releaseCreate(String orderKey, String idempotencyKey) {
+        RELEASE_CREATE_SCRIPT.eval(jedis, List.of(RedisKeys.createClaim(orderKey)), List.of(idempotencyKey));
+    }
+
+    public void saveCreateResult(String orderKey, String idempotencyKey, String orderJson, long ttlMillis) {
+        jedis.set(RedisKeys.createResult(orderKey, idempotencyKey), orderJson, SetParams.setParams().px(ttlMillis));
+    }
+
+    // The order JSON saved by the create with this key, or null if there was none or it has expired
+    public String getCreateResult(String orderKey, String idempotencyKey) {
+        return jedis.get(RedisKeys.createResult(orderKey, idempotencyKey));
+    }
+
+    /**
+     * Reads just the status of an order, or null if the order does not exist.
+     */
+    public String getStatus(String orderKey) {
+        try {
+            return readStatus(codec, orderKey);
+        } catch (JedisDataException e) {
+            return readStatus(legacyCodec, orderKey);
+        }
+    }
+
+    private String readStatus(OrderCodec statusCodec, String orderKey) {
+        Response<?> reply;
+        try (PipelineBase pipeline = jedis.pipelined()) {
+            reply = statusCodec.readStatus(pipeline, orderKey);
+            pipeline.sync();
+        }
+        return statusCodec.decodeStatus(reply.get());
+    }
+
+    /**
+     * Rewrites only the sessionId on each order, pipelined into one round trip.
+     */
+    public void setSessionIds(Collection<String> orderKeys, String sessionId) {
+        if (orderKeys.isEmpty()) {
+            return;
+        }
+
+        Map<String, Response<?>> replies = new LinkedHashMap<>();
+        try (PipelineBase pipeline = jedis.pipelined()) {
+            for (String orderKey : orderKeys) {
+                replies.put(orderKey, codec.writeSessionId(pipeline, orderKey, sessionId));
+            }
+            pipeline.sync();
+        }
+
+        // Anything left in the legacy format gets the same update in that format
+        try (PipelineBase pipeline = jedis.pipelined()) {
+            boolean retried = false;
+            for (Map.Entry<String, Response<?>> reply : replies.entrySet()) {
+                try {
+                    reply.getValue().get();
+                } catch (JedisDataException e) {
+                    legacyCodec.writeSessionId(pipeline, reply.getKey(), sessionId);
+                    retried = true;
+                }
+            }
+            if (retried) {
+                pipeline.sync();
+            }
+        }
+    }
+}
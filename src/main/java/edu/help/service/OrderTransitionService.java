@@ -0,0 +1,201 @@
+package edu.help.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import edu.help.dto.Order;
+import edu.help.dto.OrderDelta;
+import edu.help.dto.OrderEvent;
+import redis.clients.jedis.UnifiedJedis;
+
+/**
+ * Applies order status changes inside Redis with a single script call. The
+ * script checks the current status, sets the new one, bumps the order's
+ * version and keeps the terminal index in step, so concurrent terminals can never both win a transition.
+ * Finished orders are given a TTL so the keyspace only holds open orders,
+ * and are queued in the merchant's Postgres outbox in the same step, so a
+ * finished order can never miss its save. The change is appended to the
+ * merchant's event stream in that step too, so no applied transition goes
+ * without its notification.
+ */
+@Service
+public class OrderTransitionService {
+
+    // KEYS[1] = order key, KEYS[2] = terminal index, KEYS[3] = open-order set, KEYS[4] = Postgres outbox,
+    // KEYS[5] = event stream
+    // ARGV[1] = new status, ARGV[2] = "1" if the new status is final, ARGV[3] = index score,
+    // ARGV[4] = TTL in ms for finished orders (0 keeps them), ARGV[5] = event type,
+    // ARGV[6] = event stream max length, ARGV[7..] = allowed from
+    private static final LuaScript TRANSITION_SCRIPT = new LuaScript("""
+            local kind = redis.call('TYPE', KEYS[1]).ok
+            local current
+            if kind == 'hash' then
+              current = redis.call('HGET', KEYS[1], 'status')
+            elseif kind == 'ReJSON-RL' then
+              current = cjson.decode(redis.call('JSON.GET', KEYS[1], '$.status'))[1]
+            else
+              return {'missing'}
+            end
+            local allowed = false
+            for i = 7, #ARGV do
+              if ARGV[i] == current then
+                allowed = true
+                break
+              end
+            end
+            if not allowed then
+              return {'rejected', current or ''}
+            end
+            local order
+            if kind == 'hash' then
+              redis.call('HSET', KEYS[1], 'status', ARGV[1])
+              redis.call('HINCRBY', KEYS[1], 'version', 1)
+              order = redis.call('HGETALL', KEYS[1])
+            else
+              redis.call('JSON.SET', KEYS[1], '$.status', cjson.encode(ARGV[1]))
+              -- Orders written before versioning have no field yet, so set rather than increment
+              local version = tonumber(cjson.decode(redis.call('JSON.GET', KEYS[1], '$.version'))[1]) or 0
+              redis.call('JSON.SET', KEYS[1], '$.version', version + 1)
+              order = redis.call('JSON.GET', KEYS[1])
+            end
+            local payload = order
+            if kind == 'hash' then
+              payload = cjson.encode(order)
+            end
+            if ARGV[2] == '1' then
+              redis.call('ZREM', KEYS[2], KEYS[1])
+              redis.call('ZREM', KEYS[3], KEYS[1])
+              redis.call('XADD', KEYS[4], '*', 'kind', kind, 'order', payload)
+              if tonumber(ARGV[4]) > 0 then
+                redis.call('PEXPIRE', KEYS[1], ARGV[4])
+              end
+            else
+              redis.call('ZADD', KEYS[2], 'NX', ARGV[3], KEYS[1])
+              redis.call('ZADD', KEYS[3], 'NX', ARGV[3], KEYS[1])
+            end
+            redis.call('XADD', KEYS[5], 'MAXLEN', '~', ARGV[6], '*', 'type', ARGV[5], 'kind', kind, 'order', payload)
+            return {'ok', current, kind, order}
+            """);
+
+    public enum Transition {
+        READY("ready", false, OrderEvent.READY, "unready", "arrived"),
+        ARRIVE("arrived", false, OrderEvent.ARRIVE, "ready"),
+        DELIVER("delivered", true, OrderEvent.DELIVER, "ready", "arrived"),
+        CANCEL("canceled", true, OrderEvent.CANCEL, "unready", "ready", "arrived"),
+        // Retention sweep of orders nobody ever picked up
+        EXPIRE("canceled", true, OrderEvent.CANCEL, "unready");
+
+        private final String status;
+        private final boolean terminal;
+        private final String eventType;
+        private final List<String> allowedFrom;
+
+        Transition(String status, boolean terminal, String eventType, String... allowedFrom) {
+            this.status = status;
+            this.terminal = terminal;
+            this.eventType = eventType;
+            this.allowedFrom = Arrays.asList(allowedFrom);
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public boolean isTerminal() {
+            return terminal;
+        }
+    }
+
+    public enum Outcome {
+        APPLIED, MISSING, REJECTED
+    }
+
+    public static class TransitionResult {
+        private final Outcome outcome;
+        private final String previousStatus;
+        private final Order order;
+
+        TransitionResult(Outcome outcome, String previousStatus, Order order) {
+            this.outcome = outcome;
+            this.previousStatus = previousStatus;
+            this.order = order;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        public String getPreviousStatus() {
+            return previousStatus;
+        }
+
+        // The order after the transition; null unless the transition was applied
+        public Order getOrder() {
+            return order;
+        }
+    }
+
+    // What a transition changed on the order, for clients that already hold the rest
+    public static OrderDelta statusDelta(Order order) {
+        return new OrderDelta(
+                RedisKeys.order(order.getMerchantId(), order.getEmployeeId(), order.getCustomerId()),
+                order.getMerchantId(), order.getEmployeeId(), order.getCustomerId(), order.getVersion(),
+                Map.of("status", order.getStatus()));
+    }
+
+    private final UnifiedJedis jedis;
+    private final OrderStore orderStore;
+    private final long finishedTtlMillis;
+    private final long eventsMaxLen;
+
+    public OrderTransitionService(UnifiedJedis jedis, OrderStore orderStore,
+            @Value("${orders.retention.finished-ttl-seconds:3600}") long finishedTtlSeconds,
+            @Value("${orders.events.max-len:1000}") long eventsMaxLen) {
+        this.jedis = jedis;
+        this.orderStore = orderStore;
+        this.finishedTtlMillis = TimeUnit.SECONDS.toMillis(finishedTtlSeconds);
+        this.eventsMaxLen = eventsMaxLen;
+    }
+
+    public TransitionResult apply(int merchantId, int employeeId, int customerId, Transition transition)
+            throws JsonProcessingException {
+        String orderKey = RedisKeys.order(merchantId, employeeId, customerId);
+
+        // All five carry the merchant's hash tag, so the script stays on one cluster slot
+        List<String> keys = Arrays.asList(orderKey, RedisKeys.terminalOrders(merchantId, employeeId),
+                RedisKeys.openOrders(merchantId), RedisKeys.outbox(merchantId), RedisKeys.events(merchantId));
+        List<String> args = new ArrayList<>();
+        args.add(transition.status);
+        args.add(transition.terminal ? "1" : "0");
+        args.add(String.valueOf(System.currentTimeMillis()));
+        args.add(String.valueOf(finishedTtlMillis));
+        args.add(transition.eventType);
+        args.add(String.valueOf(eventsMaxLen));
+        args.addAll(transition.allowedFrom);
+
+        List<?> reply = (List<?>) TRANSITION_SCRIPT.eval(jedis, keys, args);
+        String outcome = (String) reply.get(0);
+
+        if ("missing".equals(outcome)) {
+            return new TransitionResult(Outcome.MISSING, null, null);
+        }
+        if ("rejected".equals(outcome)) {
+            System.out.println("Rejected " + transition + " for " + orderKey + ", current status: " + reply.get(1));
+            return new TransitionResult(Outcome.REJECTED, (String) reply.get(1), null);
+        }
+
+        // The script hands back the order in whatever format it is stored as
+        Order order = orderStore.codecForType((String) reply.get(2)).decode(reply.get(3));
+        System.out.println("Applied " + transition + " for " + orderKey + ": " + reply.get(1) + " -> "
+                + transition.status);
+        return new TransitionResult(Outcome.APPLIED, (String) reply.get(1), order);
+    }
+}
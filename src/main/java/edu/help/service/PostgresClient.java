@@ -0,0 +1,225 @@
+package edu.help.service;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.help.dto.MerchantCatalog;
+import edu.help.dto.Order;
+import edu.help.dto.OrderRequest;
+import edu.help.dto.OrderResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import static edu.help.config.ApiConfig.FULL_HTTP_PATH;
+
+/**
+ * Non-blocking client for the Postgres service. Calls return at once and
+ * complete on the HTTP client's threads when the backend answers, so no
+ * WebSocket thread waits on it. Point {@code postgres.base-url} at a local
+ * stub to run against something other than the real backend. The
+ * connection pool and protocol are set up on the {@code postgresHttpClient}
+ * bean in {@link edu.help.config.AppConfig}.
+ *
+ * Every call goes through a circuit breaker and a bulkhead: once the backend
+ * keeps failing, or {@code postgres.bulkhead.max-concurrent} calls are
+ * already in flight, calls fail at once with {@link UnavailableException}
+ * instead of queuing up behind the timeout.
+ */
+@Service
+public class PostgresClient {
+
+    /** Thrown when a call is refused without reaching the backend. */
+    public static class UnavailableException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public UnavailableException(String message) {
+            super(message);
+        }
+    }
+
+    /** Thrown when the backend answers with a non-2xx status. */
+    public static class StatusException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        public StatusException(String message, int status) {
+            super(message);
+            this.status = status;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+    }
+
+    private final HttpClient httpClient;
+    // Modules as RestTemplate had them: the response DTOs rely on constructor parameter names
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final String baseUrl;
+    private final Duration requestTimeout;
+    private final CircuitBreaker breaker;
+    private final Semaphore bulkhead;
+    private final MeterRegistry registry;
+    private final Counter breakerRejections;
+    private final Counter bulkheadRejections;
+
+    public PostgresClient(HttpClient httpClient, MeterRegistry registry,
+            @Value("${postgres.base-url:}") String baseUrl,
+            @Value("${postgres.timeout.request-ms:5000}") long requestTimeoutMillis,
+            @Value("${postgres.breaker.window:20}") int breakerWindow,
+            @Value("${postgres.breaker.minimum-calls:10}") int breakerMinimumCalls,
+            @Value("${postgres.breaker.failure-rate:50}") double breakerFailureRate,
+            @Value("${postgres.breaker.open-ms:10000}") long breakerOpenMillis,
+            @Value("${postgres.breaker.half-open-calls:3}") int breakerHalfOpenCalls,
+            @Value("${postgres.bulkhead.max-concurrent:64}") int maxConcurrent) {
+        this.baseUrl = baseUrl.isBlank() ? FULL_HTTP_PATH : baseUrl;
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMillis);
+        this.httpClient = httpClient;
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+        this.breaker = new CircuitBreaker("postgres", breakerWindow, breakerMinimumCalls, breakerFailureRate,
+                breakerOpenMillis, breakerHalfOpenCalls);
+        this.bulkhead = new Semaphore(maxConcurrent);
+        this.registry = registry;
+
+        // 0 = closed, 1 = half-open, 2 = open
+        Gauge.builder("postgres.breaker.state", breaker, b -> b.getState().ordinal())
+                .description("Postgres circuit breaker state")
+                .register(registry);
+        Gauge.builder("postgres.bulkhead.in-flight", bulkhead, b -> maxConcurrent - b.availablePermits())
+                .description("Postgres calls in flight")
+                .register(registry);
+        this.breakerRejections = Counter.builder("postgres.rejected")
+                .description("Postgres calls refused without being sent")
+                .tag("reason", "breaker-open")
+                .register(registry);
+        this.bulkheadRejections = Counter.builder("postgres.rejected")
+                .description("Postgres calls refused without being sent")
+                .tag("reason", "bulkhead-full")
+                .register(registry);
+    }
+
+    // Prices the order and charges points; completes with null if the backend sent no body
+    public CompletableFuture<OrderResponse> processOrder(OrderRequest orderRequest) {
+        return post("/employee/" + orderRequest.getMerchantId() + "/processOrder", orderRequest)
+                .thenApply(body -> {
+                    if (body.isEmpty()) {
+                        return null;
+                    }
+                    try {
+                        return objectMapper.readValue(body, OrderResponse.class);
+                    } catch (JsonProcessingException e) {
+                        throw new IllegalStateException("Unreadable processOrder response: " + e.getMessage(), e);
+                    }
+                });
+    }
+
+    // Persists a delivered or canceled order
+    public CompletableFuture<Void> saveOrder(Order order) {
+        return post("/employee/save", order).thenApply(body -> null);
+    }
+
+    // The merchant's item availability snapshot
+    public CompletableFuture<MerchantCatalog> getCatalog(int merchantId) {
+        return get("/employee/" + merchantId + "/catalog").thenApply(body -> {
+            try {
+                return objectMapper.readValue(body, MerchantCatalog.class);
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Unreadable catalog response: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    private CompletableFuture<String> post(String path, Object payload) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return call(path, HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json)));
+    }
+
+    private CompletableFuture<String> get(String path) {
+        return call(path, HttpRequest.newBuilder(URI.create(baseUrl + path)).GET());
+    }
+
+    private CompletableFuture<String> call(String path, HttpRequest.Builder request) {
+        if (!bulkhead.tryAcquire()) {
+            bulkheadRejections.increment();
+            return CompletableFuture.failedFuture(new UnavailableException("Postgres bulkhead full"));
+        }
+        CircuitBreaker.Permit permit = breaker.tryAcquire();
+        if (permit == null) {
+            bulkhead.release();
+            breakerRejections.increment();
+            return CompletableFuture.failedFuture(new UnavailableException("Postgres circuit open"));
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<String> response;
+        try {
+            response = send(path, request.timeout(requestTimeout).build());
+        } catch (RuntimeException e) {
+            // Thrown before anything was sent, e.g. by a client that has been shut down; the permits still go back
+            response = CompletableFuture.failedFuture(e);
+        }
+        return response.whenComplete((body, error) -> {
+            bulkhead.release();
+            if (error == null || isClientError(error)) {
+                breaker.onSuccess(permit);
+            } else {
+                breaker.onFailure(permit);
+            }
+            record(path, error == null ? "success" : "failure", System.nanoTime() - start);
+        });
+    }
+
+    private void record(String path, String outcome, long nanos) {
+        // Merchant ids in the path would make a timer per merchant
+        String call = path.endsWith("/processOrder") ? "processOrder" : path.substring(path.lastIndexOf('/') + 1);
+        Timer.builder("postgres.call")
+                .description("Postgres service call latency")
+                .tag("call", call)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    // A 4xx means the backend is up and answering, so it does not count against the breaker
+    static boolean isClientError(Throwable error) {
+        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+        return cause instanceof StatusException && ((StatusException) cause).getStatus() < 500;
+    }
+
+    private CompletableFuture<String> send(String path, HttpRequest request) {
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .thenApply(response -> {
+                    if (response.statusCode() / 100 != 2) {
+                        throw new StatusException(request.method() + " " + path + " returned HTTP "
+                                + response.statusCode(), response.statusCode());
+                    }
+                    return response.body();
+                });
+    }
+}
@@ -0,0 +1,101 @@
+package edu.help.service;
+
+/**
+ * The Redis key schema. Keys are namespaced with ':' and everything that
+ * belongs to one merchant carries the {m:<merchantId>} hash tag, so a
+ * merchant's orders, terminal indexes and event stream share a cluster slot
+ * and multi-key scripts and transactions over them stay legal.
+ */
+public final class RedisKeys {
+
+    // Merchants that may have open orders, for the retention sweep
+    public static final String OPEN_MERCHANTS = "orders:merchants";
+
+    // Set of every merchant event stream key, so consumers know what to read
+    public static final String EVENT_STREAMS = "orders:events:streams";
+
+    // Merchants whose Postgres outbox the drainer has to read
+    public static final String OUTBOX_MERCHANTS = "orders:outbox:merchants";
+
+    // customerId -> APNs device token, shared so any node can send the push
+    public static final String DEVICE_TOKENS = "customers:deviceTokens";
+
+    // Publish a merchantId here when its menu changes, so every node drops its cached catalog
+    public static final String CATALOG_CHANNEL = "catalog:invalidate";
+
+    private RedisKeys() {
+    }
+
+    public static String merchantTag(int merchantId) {
+        return "{m:" + merchantId + "}";
+    }
+
+    // e.g. {m:3}:order:7:42 for customer 42 on employee 7's terminal
+    public static String order(int merchantId, int employeeId, int customerId) {
+        return merchantTag(merchantId) + ":order:" + employeeId + ":" + customerId;
+    }
+
+    // Held while a create for the order is in flight on some node; same slot as the order
+    public static String createClaim(String orderKey) {
+        return orderKey + ":creating";
+    }
+
+    // The order a create with this idempotency key produced, kept briefly so a retry gets the same answer
+    public static String createResult(String orderKey, String idempotencyKey) {
+        return orderKey + ":created:" + idempotencyKey;
+    }
+
+    // Reads the merchant back out of the hash tag of any of its keys
+    public static int merchantIdOf(String orderKey) {
+        return Integer.parseInt(orderKey.substring(orderKey.indexOf(':') + 1, orderKey.indexOf('}')));
+    }
+
+    // The terminal's TerminalSession record
+    public static String terminal(int merchantId, int employeeId) {
+        return merchantTag(merchantId) + ":term:" + employeeId;
+    }
+
+    // Sorted set of a terminal's open order keys, scored by order timestamp
+    public static String terminalOrders(int merchantId, int employeeId) {
+        return terminal(merchantId, employeeId) + ":orders";
+    }
+
+    // Every open order at the merchant, scored by order timestamp, for the retention sweep
+    public static String openOrders(int merchantId) {
+        return merchantTag(merchantId) + ":open";
+    }
+
+    // Finished orders waiting to be saved to Postgres, written by the transition script
+    public static String outbox(int merchantId) {
+        return merchantTag(merchantId) + ":outbox";
+    }
+
+    // Outbox entries Postgres refused for good, kept for inspection
+    public static String outboxDeadLetters(int merchantId) {
+        return outbox(merchantId) + ":dead";
+    }
+
+    public static String events(int merchantId) {
+        return merchantTag(merchantId) + ":events";
+    }
+
+    // Set of order keys a customer currently has in Redis; spans merchants, so it has its own tag
+    public static String customerOrders(int customerId) {
+        return "{c:" + customerId + "}:orders";
+    }
+
+    // Node id that holds a WebSocket session
+    public static String sessionOwner(String sessionId) {
+        return "session:" + sessionId;
+    }
+
+    // Present while the node is up; it expires a few missed heartbeats after the node dies
+    public static String nodeHeartbeat(String nodeId) {
+        return "node:" + nodeId + ":alive";
+    }
+
+    // Pub/sub channel a node listens on for frames routed to its sessions
+    public static String nodeChannel(String nodeId) {
+        return "node:" + nodeId;
+    }
+}
@@ -0,0 +1,38 @@
+package edu.help.service;
+
+import java.util.List;
+import java.util.Map;
+
+import redis.clients.jedis.StreamEntryID;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.params.XAutoClaimParams;
+
+/**
+ * Consumer group housekeeping shared by the order event log and the
+ * Postgres outbox.
+ */
+public final class RedisStreams {
+
+    private RedisStreams() {
+    }
+
+    // Creates the group at the start of the stream; a no-op if it already exists
+    public static void ensureGroup(UnifiedJedis jedis, String streamKey, String group) {
+        try {
+            jedis.xgroupCreate(streamKey, group, new StreamEntryID(), true);
+        } catch (JedisDataException e) {
+            if (!e.getMessage().startsWith("BUSYGROUP")) {
+                throw e;
+            }
+        }
+    }
+
+    // Takes over entries another consumer was handed but has sat on for minIdleMillis, e.g. because it died
+    public static int claimStale(UnifiedJedis jedis, String streamKey, String group, String consumer,
+            long minIdleMillis, int count) {
+        Map.Entry<StreamEntryID, List<StreamEntryID>> claimed = jedis.xautoclaimJustId(streamKey, group, consumer,
+                minIdleMillis, new StreamEntryID(), XAutoClaimParams.xAutoClaimParams().count(count));
+        return claimed.getValue().size();
+    }
+}
@@ -0,0 +1,159 @@
+package edu.help.websocket;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+/**
+ * Lets clients that ask for the {@value #CBOR} subprotocol at the handshake
+ * send and receive the same actions and payloads as CBOR in binary frames.
+ * JSON text stays the default for anyone that does not ask.
+ *
+ * Inbound CBOR is read straight into the payload map and handed to the
+ * handler's {@link PayloadHandler#handlePayload}, the same call its JSON text
+ * path ends in. Replies written for the session by {@link OutboundFrames} are
+ * already CBOR. Only JSON text frames, such as those routed in from other
+ * nodes, are transcoded on the way out, as a streaming token copy with no
+ * object tree in between.
+ */
+public class BinaryProtocolHandlerDecorator extends WebSocketHandlerDecorator {
+
+    public static final String CBOR = "cbor";
+
+    /** A handler that can take an inbound message already decoded into its payload map. */
+    public interface PayloadHandler extends WebSocketHandler {
+        void handlePayload(WebSocketSession session, Map<String, Object> payload) throws Exception;
+    }
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final CBORFactory CBOR_FACTORY = new CBORFactory();
+    private static final ObjectReader PAYLOAD_READER = new ObjectMapper(CBOR_FACTORY)
+            .readerFor(new TypeReference<Map<String, Object>>() {
+            })
+            .with(DeserializationFeature.FAIL_ON_TRAILING_TOKENS);
+
+    private final PayloadHandler handler;
+    private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+
+    public BinaryProtocolHandlerDecorator(PayloadHandler delegate) {
+        super(delegate);
+        this.handler = delegate;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        if (CBOR.equals(session.getAcceptedProtocol())) {
+            WebSocketSession binary = new CborSession(session);
+            sessions.put(session.getId(), binary);
+            session = binary;
+        }
+        super.afterConnectionEstablished(session);
+    }
+
+    @Override
+    public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+        WebSocketSession binary = sessions.get(session.getId());
+        if (binary == null) {
+            super.handleMessage(session, message);
+            return;
+        }
+        if (message instanceof BinaryMessage frame) {
+            Map<String, Object> payload;
+            try {
+                payload = readPayload(frame.getPayload());
+            } catch (IOException e) {
+                System.err.println("Unreadable CBOR frame on session " + session.getId() + ": " + e.getMessage());
+                session.close(CloseStatus.BAD_DATA);
+                return;
+            }
+            handler.handlePayload(binary, payload);
+            return;
+        }
+        super.handleMessage(binary, message);
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
+        super.handleTransportError(sessions.getOrDefault(session.getId(), session), exception);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+        WebSocketSession binary = sessions.remove(session.getId());
+        super.afterConnectionClosed(binary != null ? binary : session, closeStatus);
+    }
+
+    // Sends every text frame as the equivalent CBOR binary frame; binary frames are already CBOR
+    private static final class CborSession extends WebSocketSessionDecorator {
+
+        CborSession(WebSocketSession session) {
+            super(session);
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            if (message instanceof TextMessage frame) {
+                message = new BinaryMessage(toCbor(frame.getPayload()));
+            }
+            super.sendMessage(message);
+        }
+    }
+
+    static Map<String, Object> readPayload(ByteBuffer payload) throws IOException {
+        if (payload.hasArray()) {
+            return PAYLOAD_READER.readValue(payload.array(), payload.arrayOffset() + payload.position(),
+                    payload.remaining());
+        }
+        byte[] bytes = new byte[payload.remaining()];
+        payload.duplicate().get(bytes);
+        return PAYLOAD_READER.readValue(bytes);
+    }
+
+    static byte[] toCbor(String text) throws IOException {
+        try {
+            return transcode(JSON_FACTORY.createParser(text), CBOR_FACTORY);
+        } catch (JsonProcessingException e) {
+            // Plain status lines like "Initialization successful..." go out as a CBOR text string
+            ByteArrayOutputStream out = new ByteArrayOutputStream(text.length() + 8);
+            try (JsonGenerator generator = CBOR_FACTORY.createGenerator(out)) {
+                generator.writeString(text);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static byte[] transcode(JsonParser parser, JsonFactory target) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (parser; JsonGenerator generator = target.createGenerator(out)) {
+            if (parser.nextToken() != null) {
+                generator.copyCurrentStructure(parser);
+            }
+            if (parser.nextToken() != null) {
+                throw new JsonParseException(parser, "Trailing content after the first value");
+            }
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,136 @@
+package edu.help.websocket;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Compresses large outbound frames for clients that connect with
+ * {@code ?compress=1}. A text frame of at least {@code minBytes} goes out
+ * as a binary frame holding the raw DEFLATE (RFC 1951) of its UTF-8 bytes.
+ * Smaller frames, like pongs and status lines, stay plain text, so the
+ * client can tell the two apart by frame type. CBOR sessions already send
+ * binary frames and are left as they are.
+ *
+ * Every session on the endpoint counts its outbound bytes before and after
+ * compression, tagged with the endpoint, to show what compression saves
+ * there.
+ */
+public class CompressionHandlerDecorator extends WebSocketHandlerDecorator {
+
+    private final boolean enabled;
+    private final int minBytes;
+    private final int level;
+    private final Counter rawBytes;
+    private final Counter sentBytes;
+    private final Counter compressedFrames;
+    private final Counter plainFrames;
+    private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+
+    public CompressionHandlerDecorator(WebSocketHandler delegate, String endpoint, boolean enabled, int minBytes,
+            int level, MeterRegistry registry) {
+        super(delegate);
+        this.enabled = enabled;
+        this.minBytes = minBytes;
+        this.level = level;
+        this.rawBytes = Counter.builder("websocket.outbound.bytes")
+                .description("Outbound WebSocket payload bytes")
+                .tag("endpoint", endpoint)
+                .tag("stage", "raw")
+                .register(registry);
+        this.sentBytes = Counter.builder("websocket.outbound.bytes")
+                .description("Outbound WebSocket payload bytes")
+                .tag("endpoint", endpoint)
+                .tag("stage", "sent")
+                .register(registry);
+        this.compressedFrames = Counter.builder("websocket.outbound.frames")
+                .description("Outbound WebSocket frames")
+                .tag("endpoint", endpoint)
+                .tag("compressed", "true")
+                .register(registry);
+        this.plainFrames = Counter.builder("websocket.outbound.frames")
+                .description("Outbound WebSocket frames")
+                .tag("endpoint", endpoint)
+                .tag("compressed", "false")
+                .register(registry);
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        boolean compress = enabled && OutboundFrames.acceptsCompression(session.getUri());
+        WebSocketSession counted = new CompressingSession(session, compress);
+        sessions.put(session.getId(), counted);
+        super.afterConnectionEstablished(counted);
+    }
+
+    @Override
+    public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+        super.handleMessage(sessions.getOrDefault(session.getId(), session), message);
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
+        super.handleTransportError(sessions.getOrDefault(session.getId(), session), exception);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+        WebSocketSession counted = sessions.remove(session.getId());
+        super.afterConnectionClosed(counted != null ? counted : session, closeStatus);
+    }
+
+    private final class CompressingSession extends WebSocketSessionDecorator {
+
+        private final boolean compress;
+
+        CompressingSession(WebSocketSession session, boolean compress) {
+            super(session);
+            this.compress = compress;
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            int length = message.getPayloadLength();
+            rawBytes.increment(length);
+
+            if (compress && message instanceof TextMessage frame && length >= minBytes) {
+                message = new BinaryMessage(deflate(frame.asBytes()));
+                compressedFrames.increment();
+            } else {
+                plainFrames.increment();
+            }
+            sentBytes.increment(message.getPayloadLength());
+            super.sendMessage(message);
+        }
+    }
+
+    private byte[] deflate(byte[] input) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 4 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+}
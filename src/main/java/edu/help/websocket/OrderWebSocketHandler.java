@@ -4,12 +4,13 @@ import java.io.File;
 import java.io.IOException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import javax.net.ssl.SSLException;
 
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
@@ -26,27 +27,33 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import edu.help.dto.Order;
+import edu.help.dto.OrderEvent;
 import edu.help.dto.OrderRequest;
 import edu.help.dto.ResponseWrapper;
 import edu.help.service.OrderService;
+import edu.help.service.RedisKeys;
+import redis.clients.jedis.UnifiedJedis;
 
 
 
 @Component
-public class OrderWebSocketHandler extends TextWebSocketHandler {
+public class OrderWebSocketHandler extends TextWebSocketHandler
+        implements BinaryProtocolHandlerDecorator.PayloadHandler {
 
     private static OrderWebSocketHandler instance;
 
     private final OrderService orderService;
+    private final SessionRouter sessionRouter;
+    private final UnifiedJedis jedis;
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final Map<String, WebSocketSession> sessionMap = new ConcurrentHashMap<>();
-    private final Map<String, String> deviceTokenMap = new ConcurrentHashMap<>();
     private final ApnsClient apnsClient;
    
 
-    public OrderWebSocketHandler(OrderService orderService)
+    public OrderWebSocketHandler(OrderService orderService, SessionRouter sessionRouter, UnifiedJedis jedis)
             throws InvalidKeyException, SSLException, NoSuchAlgorithmException, IOException {
         this.orderService = orderService;
+        this.sessionRouter = sessionRouter;
+        this.jedis = jedis;
 
         this.apnsClient = new ApnsClientBuilder()
                 .setApnsServer(ApnsClientBuilder.PRODUCTION_APNS_HOST) // Use `PRODUCTION_APNS_HOST` for production
@@ -82,7 +89,7 @@ public class OrderWebSocketHandler extends TextWebSocketHandler {
         // Log the connection establishment
         System.out.println("WebSocket connection established with session Id: " + session.getId());
 
-        sessionMap.put(session.getId(), session);
+        sessionRouter.register(session);
 
         // Create a ResponseWrapper object with the desired message and messageType
         ResponseWrapper response = new ResponseWrapper(
@@ -97,16 +104,25 @@ public class OrderWebSocketHandler extends TextWebSocketHandler {
         System.out.println("Sent ping message to " + session.getId());
     }
 
-    
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+        sessionRouter.unregister(session);
+    }
+
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
-        try {
-            // Log the received message payload
-            System.out.println("WebSocket message received: " + message.getPayload());
+        // Log the received message payload
+        System.out.println("WebSocket message received: " + message.getPayload());
 
-            // Parse the payload into a Map to extract action and OrderRequest
-            Map<String, Object> payloadMap = parsePayload(message.getPayload());
+        // Parse the payload into a Map to extract action and OrderRequest
+        handlePayload(session, parsePayload(message.getPayload()));
+    }
 
+    // Text frames once parsed, and CBOR frames straight from BinaryProtocolHandlerDecorator
+    @Override
+    @SuppressWarnings("unchecked")
+    public void handlePayload(WebSocketSession session, Map<String, Object> payloadMap) throws Exception {
+        try {
             String action = (String) payloadMap.get("action");
             payloadMap.remove("action");
             
@@ -147,7 +163,10 @@ public class OrderWebSocketHandler extends TextWebSocketHandler {
                     int customerIdToRefresh = (int) payloadMap.get("customerId");
                     String deviceToken = (String) payloadMap.get("deviceToken");
                     updateDeviceToken(customerIdToRefresh, deviceToken);
-                    orderService.refreshOrdersForCustomer(customerIdToRefresh, session);
+                    // Optional {merchantId: seq} of the last update the app saw at each merchant
+                    Map<String, Object> resumeFrom = payloadMap.get("resumeFrom") instanceof Map<?, ?> m
+                            ? (Map<String, Object>) m : Collections.emptyMap();
+                    orderService.refreshOrdersForCustomer(customerIdToRefresh, session, resumeFrom);
 
                     break;
                 default:
@@ -187,41 +206,29 @@ public class OrderWebSocketHandler extends TextWebSocketHandler {
 
     private void sendOrderResponse(WebSocketSession session, ResponseWrapper responseWrapper) {
         try {
-            String jsonResponse = objectMapper.writeValueAsString(responseWrapper);
-            session.sendMessage(new TextMessage(jsonResponse));
+            session.sendMessage(OutboundFrames.response(session, responseWrapper));
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    public void updateCustomer(Order order) throws IOException {
+    public void updateCustomer(OrderEvent event) throws IOException {
+        Order order = event.getOrder();
         // Extract required fields from the Order object
         String status = order.getStatus(); // Get the order status
         String sessionId = order.getSessionId(); // Retrieve session Id from the order
         int customerId = order.getCustomerId(); // Retrieve customer Id
-        String deviceToken = deviceTokenMap.get(String.valueOf(customerId)); // Lookup device token using customerId
+        String deviceToken = jedis.hget(RedisKeys.DEVICE_TOKENS, String.valueOf(customerId)); // Lookup device token using customerId
         double totalPrice = order.getTotalRegularPrice();
         int pointsAwarded = (int) Math.round(totalPrice * 10 * 1.20);
-       
-    
-        // Retrieve the WebSocket session from the sessionMap using the sessionId
-        WebSocketSession customerSession = sessionMap.get(sessionId);
-    
-        // Send WebSocket message if the session is found and open
-        if (customerSession != null && customerSession.isOpen()) {
-            // Wrap the order into a ResponseWrapper for the update
-            ResponseWrapper response = new ResponseWrapper(
-                    "update", // Message type
-                    objectMapper.convertValue(order, Map.class), // Convert order to Map
-                    "Order update successful." // Message
-            );
-    
-            // Convert the ResponseWrapper to a JSON string
-            String jsonResponse = objectMapper.writeValueAsString(response);
-    
-            // Send the JSON response to the customer via WebSocket
-            customerSession.sendMessage(new TextMessage(jsonResponse));
-        } else {
+
+        // Full update, or just the status change for apps that take deltas; both carry the event's seq
+        TextMessage frame = OutboundFrames.response(OutboundFrames.customerUpdate(event, false));
+        TextMessage delta = OutboundFrames.response(OutboundFrames.customerUpdate(event, true));
+
+        // Send to the customer's session, on whichever node holds it
+        String orderKey = RedisKeys.order(order.getMerchantId(), order.getEmployeeId(), customerId);
+        if (!sessionRouter.sendUpdate(sessionId, frame, delta, orderKey, order.getVersion())) {
             System.err.println("Customer session not found or closed: " + sessionId);
         }
     
@@ -263,10 +270,13 @@ public class OrderWebSocketHandler extends TextWebSocketHandler {
         }
     }
 
-    // Method to update the deviceTokenMap from OrderService
+    // Stores the customer's device token in Redis so pushes work from any node
     public void updateDeviceToken(int customerId, String deviceToken) {
+        if (deviceToken == null || deviceToken.isEmpty()) {
+            return;
+        }
         String customerIdStr = String.valueOf(customerId);
-        deviceTokenMap.put(customerIdStr, deviceToken);
+        jedis.hset(RedisKeys.DEVICE_TOKENS, customerIdStr, deviceToken);
         System.out.println("Device token for customerId " + customerId + " has been stored/updated.");
     }
 
@@ -325,7 +335,7 @@ public class OrderWebSocketHandler extends TextWebSocketHandler {
     // }
 
     public void sendArrivedNotification(int customerId, int employeeId) {
-        String deviceToken = deviceTokenMap.get(String.valueOf(customerId));
+        String deviceToken = jedis.hget(RedisKeys.DEVICE_TOKENS, String.valueOf(customerId));
         if (deviceToken != null && !deviceToken.isEmpty()) {
             
             String message = "The employee has been notified";
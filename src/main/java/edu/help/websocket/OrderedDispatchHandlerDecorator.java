@@ -0,0 +1,91 @@
+package edu.help.websocket;
+
+import java.nio.ByteBuffer;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+/**
+ * Runs the wrapped handler on the {@link SessionTaskExecutor} instead of the
+ * container thread that read the frame, so slow Redis, backend or APNs work
+ * never ties up the threads serving every other connection. Each session's
+ * callbacks still run one at a time and in order: connect, then its
+ * messages, then close.
+ */
+public class OrderedDispatchHandlerDecorator extends WebSocketHandlerDecorator {
+
+    private final SessionTaskExecutor executor;
+
+    public OrderedDispatchHandlerDecorator(WebSocketHandler delegate, SessionTaskExecutor executor) {
+        super(delegate);
+        this.executor = executor;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        dispatch(session, () -> super.afterConnectionEstablished(session));
+    }
+
+    @Override
+    public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) {
+        // The container refills a binary frame's buffer with the next frame once this returns
+        WebSocketMessage<?> queued = message instanceof BinaryMessage frame ? copy(frame) : message;
+        dispatch(session, () -> super.handleMessage(session, queued));
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        dispatch(session, () -> super.handleTransportError(session, exception));
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) {
+        executor.executeLast(session.getId(), () -> {
+            try {
+                super.afterConnectionClosed(session, closeStatus);
+            } catch (Exception e) {
+                System.err.println("Close handling failed for session " + session.getId() + ": " + e.getMessage());
+            }
+        });
+    }
+
+    private interface Callback {
+        void run() throws Exception;
+    }
+
+    private void dispatch(WebSocketSession session, Callback callback) {
+        boolean queued = executor.execute(session.getId(), () -> {
+            try {
+                callback.run();
+            } catch (Exception e) {
+                // What Spring does when a handler throws on the container thread
+                System.err.println("WebSocket handler failed for session " + session.getId() + ": " + e.getMessage());
+                close(session, CloseStatus.SERVER_ERROR);
+            }
+        });
+        // A closed session's queue takes nothing after its close callback
+        if (!queued && session.isOpen()) {
+            System.err.println("Session " + session.getId() + " sent more than the worker queue holds, closing");
+            close(session, CloseStatus.POLICY_VIOLATION.withReason("Too many requests in flight"));
+        }
+    }
+
+    private static BinaryMessage copy(BinaryMessage frame) {
+        ByteBuffer payload = frame.getPayload().duplicate();
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        return new BinaryMessage(bytes, frame.isLast());
+    }
+
+    private static void close(WebSocketSession session, CloseStatus status) {
+        try {
+            session.close(status);
+        } catch (Exception e) {
+            System.err.println("Failed to close session " + session.getId() + ": " + e.getMessage());
+        }
+    }
+}
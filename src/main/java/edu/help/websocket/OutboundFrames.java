@@ -0,0 +1,137 @@
+package edu.help.websocket;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+import edu.help.dto.Order;
+import edu.help.dto.OrderEvent;
+import edu.help.dto.ResponseWrapper;
+import edu.help.service.OrderTransitionService;
+
+/**
+ * Encodes outbound WebSocket frames with writers resolved once, straight from
+ * the DTOs without an intermediate Map. Frames are immutable, so a fan-out
+ * encodes once and hands the same {@link TextMessage} to every recipient.
+ * Frames written for one known session come out as CBOR binary frames when
+ * the session speaks {@value BinaryProtocolHandlerDecorator#CBOR}.
+ */
+public final class OutboundFrames {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ObjectWriter RESPONSE_WRITER = MAPPER.writerFor(ResponseWrapper.class);
+    private static final ObjectWriter MAP_WRITER = MAPPER.writerFor(new TypeReference<Map<String, ?>>() {
+    });
+    private static final ObjectMapper CBOR_MAPPER = new ObjectMapper(new CBORFactory());
+    private static final ObjectWriter CBOR_RESPONSE_WRITER = CBOR_MAPPER.writerFor(ResponseWrapper.class);
+    private static final ObjectWriter CBOR_MAP_WRITER = CBOR_MAPPER.writerFor(new TypeReference<Map<String, ?>>() {
+    });
+
+    private OutboundFrames() {
+    }
+
+    // Clients opt in to delta updates by connecting with ?deltas=1
+    public static boolean acceptsDeltas(WebSocketSession session) {
+        return hasQueryFlag(session.getUri(), "deltas=1");
+    }
+
+    // Clients opt in to compressed frames by connecting with ?compress=1
+    public static boolean acceptsCompression(URI uri) {
+        return hasQueryFlag(uri, "compress=1");
+    }
+
+    public static boolean sendsCbor(WebSocketSession session) {
+        return BinaryProtocolHandlerDecorator.CBOR.equals(session.getAcceptedProtocol());
+    }
+
+    private static boolean hasQueryFlag(URI uri, String flag) {
+        String query = uri == null ? null : uri.getQuery();
+        return query != null && Arrays.asList(query.split("&")).contains(flag);
+    }
+
+    // Customer-facing frames: {"messageType", "data", "message"}
+    public static TextMessage response(ResponseWrapper response) throws JsonProcessingException {
+        return new TextMessage(RESPONSE_WRITER.writeValueAsString(response));
+    }
+
+    // response() written in the session's own format
+    public static WebSocketMessage<?> response(WebSocketSession session, ResponseWrapper response)
+            throws JsonProcessingException {
+        return sendsCbor(session) ? new BinaryMessage(CBOR_RESPONSE_WRITER.writeValueAsBytes(response))
+                : response(response);
+    }
+
+    // Terminal-facing frames, e.g. {"orders": [...]} or {"update": [...]}
+    public static TextMessage map(Map<String, ?> data) throws JsonProcessingException {
+        return new TextMessage(MAP_WRITER.writeValueAsString(data));
+    }
+
+    // map() written in the session's own format
+    public static WebSocketMessage<?> map(WebSocketSession session, Map<String, ?> data)
+            throws JsonProcessingException {
+        return sendsCbor(session) ? new BinaryMessage(CBOR_MAP_WRITER.writeValueAsBytes(data)) : map(data);
+    }
+
+    /**
+     * What a terminal gets for an order event: {"orders": [order]} for one new
+     * to it, {"update": [order]} for a change, each tagged with the event's
+     * "seq" so the terminal can resume from it.
+     */
+    public static TextMessage terminalEvent(OrderEvent event) throws JsonProcessingException {
+        return map(terminalEventData(event));
+    }
+
+    // The {"delta": [...]} form of a change, or null for orders new to the terminal
+    public static TextMessage terminalEventDelta(OrderEvent event) throws JsonProcessingException {
+        Map<String, Object> data = terminalEventDeltaData(event);
+        return data == null ? null : map(data);
+    }
+
+    // What terminalEvent() or, for a terminal taking deltas, terminalEventDelta() sends this one session
+    public static WebSocketMessage<?> terminalEvent(WebSocketSession session, OrderEvent event)
+            throws JsonProcessingException {
+        Map<String, Object> delta = acceptsDeltas(session) ? terminalEventDeltaData(event) : null;
+        return map(session, delta != null ? delta : terminalEventData(event));
+    }
+
+    private static Map<String, Object> terminalEventData(OrderEvent event) {
+        boolean newToTerminal = OrderEvent.CREATE.equals(event.getType()) || OrderEvent.ARRIVE.equals(event.getType());
+        return terminalFrameData(newToTerminal ? "orders" : "update", event.getOrder(), event.getId());
+    }
+
+    private static Map<String, Object> terminalEventDeltaData(OrderEvent event) {
+        if (OrderEvent.CREATE.equals(event.getType()) || OrderEvent.ARRIVE.equals(event.getType())) {
+            return null;
+        }
+        return terminalFrameData("delta", OrderTransitionService.statusDelta(event.getOrder()), event.getId());
+    }
+
+    private static Map<String, Object> terminalFrameData(String type, Object item, String seq) {
+        Map<String, Object> data = new HashMap<>();
+        data.put(type, Collections.singletonList(item));
+        data.put("seq", seq);
+        return data;
+    }
+
+    // What the customer's app gets for an order event, full or as a delta, to pass to response()
+    public static ResponseWrapper customerUpdate(OrderEvent event, boolean delta) {
+        Order order = event.getOrder();
+        return delta
+                ? new ResponseWrapper("delta", OrderTransitionService.statusDelta(order), "Order update successful.",
+                        event.getId())
+                : new ResponseWrapper("update", order, "Order update successful.", event.getId());
+    }
+}
@@ -0,0 +1,97 @@
+package edu.help.websocket;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator.OverflowStrategy;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+/**
+ * Gives the wrapped handler a {@link ConcurrentWebSocketSessionDecorator}
+ * in place of each raw session, so every send in the app goes through one
+ * bounded outbound buffer per session and is safe from any thread. A sender
+ * never waits behind another thread's write: it queues the frame and returns,
+ * and the thread already writing flushes the queue.
+ *
+ * A client that stays behind for longer than the send time limit, or lets
+ * more than the buffer size limit pile up, is handled by the overflow
+ * strategy: TERMINATE closes the session (clients reconnect and refresh in
+ * full), DROP discards the oldest queued frames. Spring only flags the
+ * session and throws {@link SessionLimitExceededException} from the send,
+ * so the wrapper closes the session itself before rethrowing; every send
+ * path is covered without each caller having to remember to.
+ */
+public class OutboundQueueHandlerDecorator extends WebSocketHandlerDecorator {
+
+    private final int sendTimeLimitMillis;
+    private final int bufferSizeLimit;
+    private final OverflowStrategy overflowStrategy;
+    private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+
+    public OutboundQueueHandlerDecorator(WebSocketHandler delegate, int sendTimeLimitMillis, int bufferSizeLimit,
+            OverflowStrategy overflowStrategy) {
+        super(delegate);
+        this.sendTimeLimitMillis = sendTimeLimitMillis;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.overflowStrategy = overflowStrategy;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        WebSocketSession outbound = new ClosingSessionDecorator(session, sendTimeLimitMillis, bufferSizeLimit,
+                overflowStrategy);
+        sessions.put(session.getId(), outbound);
+        super.afterConnectionEstablished(outbound);
+    }
+
+    @Override
+    public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+        super.handleMessage(outbound(session), message);
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
+        super.handleTransportError(outbound(session), exception);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+        WebSocketSession outbound = sessions.remove(session.getId());
+        super.afterConnectionClosed(outbound != null ? outbound : session, closeStatus);
+    }
+
+    private WebSocketSession outbound(WebSocketSession session) {
+        return sessions.getOrDefault(session.getId(), session);
+    }
+
+    // Closes a session that broke its limits, so the client sees the drop and reconnects
+    private static final class ClosingSessionDecorator extends ConcurrentWebSocketSessionDecorator {
+
+        ClosingSessionDecorator(WebSocketSession session, int sendTimeLimitMillis, int bufferSizeLimit,
+                OverflowStrategy overflowStrategy) {
+            super(session, sendTimeLimitMillis, bufferSizeLimit, overflowStrategy);
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            try {
+                super.sendMessage(message);
+            } catch (SessionLimitExceededException e) {
+                System.err.println("Closing session " + getId() + ", it fell behind: " + e.getMessage());
+                try {
+                    close(e.getStatus());
+                } catch (IOException closeError) {
+                    System.err.println("Failed to close session " + getId() + ": " + closeError.getMessage());
+                }
+                throw e;
+            }
+        }
+    }
+}
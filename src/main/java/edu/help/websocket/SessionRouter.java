@@ -0,0 +1,276 @@
+package edu.help.websocket;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.help.dto.RoutedMessage;
+import edu.help.service.RedisKeys;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.PipelineBase;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.params.SetParams;
+
+import static edu.help.config.NodeConfig.NODE_ID;
+
+/**
+ * Delivers text frames to WebSocket sessions wherever they are connected.
+ * Each node records the sessions it owns under {@code session:<id>} and
+ * listens on its own {@code node:<nodeId>} channel; a frame for a session
+ * owned by another node is published to that node's channel and sent there.
+ * Each node also keeps a heartbeat key alive, which tells the others whether
+ * an owner is still up.
+ *
+ * Events for one merchant can be fanned out by different nodes, so two
+ * updates to an order may reach the owner in either order. The owner
+ * remembers the last version of each order it sent a session and drops any
+ * update that is not newer, so a duplicate of the same version is not sent twice.
+ */
+@Component
+public class SessionRouter {
+
+    private static final long RESUBSCRIBE_DELAY_MILLIS = 1000;
+    // Orders per session whose last sent version is remembered; terminals rarely hold this many open
+    private static final int TRACKED_ORDERS = 1000;
+
+    private final UnifiedJedis jedis;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, WebSocketSession> localSessions = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Long>> sentVersions = new ConcurrentHashMap<>(); // sessionId -> orderKey -> version
+    private final long ownerTtlSeconds;
+    private final long heartbeatMillis;
+    private final NodeListener listener = new NodeListener();
+    private volatile boolean running = true;
+    private long lastOwnerRefresh = System.currentTimeMillis();
+
+    public SessionRouter(UnifiedJedis jedis,
+            @Value("${sessions.owner-ttl-seconds:86400}") long ownerTtlSeconds,
+            @Value("${sessions.node-heartbeat-ms:5000}") long heartbeatMillis) {
+        this.jedis = jedis;
+        this.ownerTtlSeconds = ownerTtlSeconds;
+        this.heartbeatMillis = heartbeatMillis;
+    }
+
+    @PostConstruct
+    public void start() {
+        heartbeat();
+        Thread thread = new Thread(this::listen, "session-router");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (listener.isSubscribed()) {
+            listener.unsubscribe();
+        }
+        // Sessions die with this node, so drop their ownership records
+        try (PipelineBase pipeline = jedis.pipelined()) {
+            pipeline.del(RedisKeys.nodeHeartbeat(NODE_ID));
+            for (String sessionId : localSessions.keySet()) {
+                pipeline.del(RedisKeys.sessionOwner(sessionId));
+            }
+            pipeline.sync();
+        }
+    }
+
+    // Lapses after three missed beats, so other nodes stop routing to a node that died
+    @Scheduled(fixedDelayString = "${sessions.node-heartbeat-ms:5000}")
+    public void heartbeat() {
+        if (!running) {
+            return;
+        }
+        jedis.set(RedisKeys.nodeHeartbeat(NODE_ID), String.valueOf(System.currentTimeMillis()),
+                SetParams.setParams().px(heartbeatMillis * 3));
+
+        // Keep owner records of long-lived sessions from expiring while this node still holds them
+        long now = System.currentTimeMillis();
+        if (now - lastOwnerRefresh >= ownerTtlSeconds * 1000 / 4) {
+            lastOwnerRefresh = now;
+            try (PipelineBase pipeline = jedis.pipelined()) {
+                for (String sessionId : localSessions.keySet()) {
+                    pipeline.expire(RedisKeys.sessionOwner(sessionId), ownerTtlSeconds);
+                }
+                pipeline.sync();
+            }
+        }
+    }
+
+    // Records that this node owns the session; the TTL, refreshed by the heartbeat, only matters if the node dies
+    public void register(WebSocketSession session) {
+        localSessions.put(session.getId(), session);
+        jedis.set(RedisKeys.sessionOwner(session.getId()), NODE_ID, SetParams.setParams().ex(ownerTtlSeconds));
+    }
+
+    public void unregister(WebSocketSession session) {
+        sentVersions.remove(session.getId());
+        if (localSessions.remove(session.getId()) != null) {
+            jedis.del(RedisKeys.sessionOwner(session.getId()));
+        }
+    }
+
+    public WebSocketSession getLocalSession(String sessionId) {
+        return sessionId == null ? null : localSessions.get(sessionId);
+    }
+
+    /**
+     * Sends a frame to the session, locally or through its owner's channel.
+     * Returns false when the session is closed or no node owns it anymore.
+     */
+    public boolean send(String sessionId, String payload) throws IOException {
+        return route(sessionId, new TextMessage(payload), null, false, null, 0);
+    }
+
+    // Sends an already encoded frame; the same instance can go to many sessions
+    public boolean send(String sessionId, TextMessage frame) throws IOException {
+        return route(sessionId, frame, null, false, null, 0);
+    }
+
+    // Sends the delta frame if the session takes delta updates, the full frame otherwise
+    public boolean send(String sessionId, TextMessage frame, TextMessage delta) throws IOException {
+        return route(sessionId, frame, delta, false, null, 0);
+    }
+
+    // Like send, but skipped if the session has already been sent this or a later version of the order
+    public boolean sendUpdate(String sessionId, TextMessage frame, TextMessage delta, String orderKey, long version)
+            throws IOException {
+        return route(sessionId, frame, delta, false, orderKey, version);
+    }
+
+    // Sends a final frame and closes the session, wherever it lives
+    public boolean close(String sessionId, String payload) throws IOException {
+        return route(sessionId, new TextMessage(payload), null, true, null, 0);
+    }
+
+    private boolean route(String sessionId, TextMessage frame, TextMessage delta, boolean close, String orderKey,
+            long version) throws IOException {
+        if (sessionId == null) {
+            return false;
+        }
+        if (localSessions.containsKey(sessionId)) {
+            return deliver(sessionId, frame, delta, close, orderKey, version);
+        }
+
+        String owner = jedis.get(RedisKeys.sessionOwner(sessionId));
+        if (owner == null || NODE_ID.equals(owner)) {
+            return false;
+        }
+
+        // Only the owning node knows what the session accepts, so both frames travel
+        RoutedMessage message = new RoutedMessage(sessionId, frame.getPayload(), close,
+                delta == null ? null : delta.getPayload(), orderKey, version);
+        long receivers = jedis.publish(RedisKeys.nodeChannel(owner), objectMapper.writeValueAsString(message));
+        if (receivers > 0) {
+            return true;
+        }
+
+        // On a cluster PUBLISH only counts subscribers on the shard that took it, so zero proves nothing there
+        if (jedis.exists(RedisKeys.nodeHeartbeat(owner))) {
+            return jedis instanceof JedisCluster;
+        }
+
+        // The owning node is gone; its sessions went with it
+        System.out.println("Node " + owner + " is not alive, dropping session " + sessionId);
+        jedis.del(RedisKeys.sessionOwner(sessionId));
+        return false;
+    }
+
+    private boolean deliver(String sessionId, TextMessage frame, TextMessage delta, boolean close, String orderKey,
+            long version) throws IOException {
+        WebSocketSession session = localSessions.get(sessionId);
+        if (session == null || !session.isOpen()) {
+            return false;
+        }
+        // Orders written before versioning have version 0 and are always sent
+        if (orderKey == null || version <= 0) {
+            return write(session, frame, delta, close);
+        }
+
+        Map<String, Long> versions = sentVersions.computeIfAbsent(sessionId, id -> new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > TRACKED_ORDERS;
+            }
+        });
+        // Held across the send, so two updates to one order cannot pass the check and then swap
+        synchronized (versions) {
+            Long sent = versions.get(orderKey);
+            if (sent != null && sent >= version) {
+                System.out.println("Skipping version " + version + " of " + orderKey + " for session " + sessionId
+                        + ", already sent " + sent);
+                return true;
+            }
+            versions.put(orderKey, version);
+            return write(session, frame, delta, close);
+        }
+    }
+
+    private boolean write(WebSocketSession session, TextMessage frame, TextMessage delta, boolean close)
+            throws IOException {
+        String sessionId = session.getId();
+        try {
+            session.sendMessage(delta != null && OutboundFrames.acceptsDeltas(session) ? delta : frame);
+        } catch (SessionLimitExceededException e) {
+            // The outbound queue has closed the session; the client reconnects and resumes
+            System.err.println("Session " + sessionId + " fell behind: " + e.getMessage());
+            return false;
+        }
+        if (close) {
+            session.close();
+        }
+        return true;
+    }
+
+    private void listen() {
+        while (running) {
+            try {
+                System.out.println("Session router listening on " + RedisKeys.nodeChannel(NODE_ID));
+                jedis.subscribe(listener, RedisKeys.nodeChannel(NODE_ID));
+            } catch (Exception e) {
+                System.err.println("Session router subscription failed: " + e.getMessage());
+            }
+            if (running) {
+                try {
+                    Thread.sleep(RESUBSCRIBE_DELAY_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private class NodeListener extends JedisPubSub {
+        @Override
+        public void onMessage(String channel, String text) {
+            try {
+                RoutedMessage message = objectMapper.readValue(text, RoutedMessage.class);
+                TextMessage delta = message.getDeltaPayload() == null ? null
+                        : new TextMessage(message.getDeltaPayload());
+                if (!deliver(message.getSessionId(), new TextMessage(message.getPayload()), delta,
+                        message.isClose(), message.getOrderKey(), message.getVersion())) {
+                    System.out.println("Routed message for closed session " + message.getSessionId());
+                }
+            } catch (JsonProcessingException e) {
+                System.err.println("Failed to decode routed message: " + e.getMessage());
+            } catch (IOException e) {
+                System.err.println("Failed to deliver routed message: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package edu.help.websocket;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Worker pool for inbound WebSocket work. Tasks for one session run one at a
+ * time in the order they were submitted; tasks for different sessions run in
+ * parallel on up to {@code sessions.inbound.threads} threads. A session that
+ * queues more than {@code sessions.inbound.max-queued-per-session} tasks is
+ * refused, so one flooding client cannot take the whole pool. One of those
+ * slots is kept for the session's last task, so its close handling always
+ * fits.
+ *
+ * A session's queue only exists while it has work: it is dropped as soon as
+ * it drains, so ids that never come back leave nothing behind.
+ */
+@Component
+public class SessionTaskExecutor {
+
+    // Tasks a session may run before giving its thread back to other sessions
+    static final int MAX_BATCH = 16;
+
+    private final ExecutorService workers;
+    private final int maxQueuedTasks;
+    private final Map<String, SerialQueue> queues = new ConcurrentHashMap<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final Timer queueWait;
+
+    private final class SerialQueue {
+        private final String sessionId;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private boolean closing; // Only touched inside queues.compute
+
+        private SerialQueue(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        private void drain() {
+            running.incrementAndGet();
+            try {
+                for (int i = 0; i < MAX_BATCH; i++) {
+                    Runnable task = tasks.poll();
+                    if (task == null) {
+                        break;
+                    }
+                    size.decrementAndGet();
+                    queued.decrementAndGet();
+                    task.run();
+                }
+            } finally {
+                running.decrementAndGet();
+                scheduled.set(false);
+                // Tasks may have arrived after the last poll, or the batch ran out
+                if (!tasks.isEmpty()) {
+                    schedule();
+                } else {
+                    // Atomic with enqueue, so a task is never added to a queue that was just dropped
+                    queues.computeIfPresent(sessionId,
+                            (id, queue) -> queue == this && tasks.isEmpty() && !scheduled.get() ? null : queue);
+                }
+            }
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                workers.execute(this::drain);
+            }
+        }
+    }
+
+    public SessionTaskExecutor(MeterRegistry registry,
+            @Value("${sessions.inbound.threads:16}") int threads,
+            @Value("${sessions.inbound.max-queued-per-session:100}") int maxQueuedPerSession) {
+        this.maxQueuedTasks = Math.max(1, maxQueuedPerSession - 1);
+
+        AtomicInteger count = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "ws-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Gauge.builder("websocket.inbound.queued", queued, AtomicInteger::get)
+                .description("Inbound WebSocket tasks waiting for a worker")
+                .register(registry);
+        Gauge.builder("websocket.inbound.running", running, AtomicInteger::get)
+                .description("Workers busy with a session's tasks")
+                .register(registry);
+        Gauge.builder("websocket.inbound.sessions", queues, Map::size)
+                .description("Sessions with inbound tasks queued or running")
+                .register(registry);
+        this.queueWait = Timer.builder("websocket.inbound.wait")
+                .description("Time an inbound task waits before it runs")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    /**
+     * Queues a task behind the session's earlier ones. Returns false, without
+     * queuing, if the session already has too many waiting or its last task
+     * has been queued.
+     */
+    public boolean execute(String sessionId, Runnable task) {
+        return enqueue(sessionId, task, false);
+    }
+
+    /**
+     * Queues the session's last task into the slot kept for it. Anything the
+     * session submits after this is refused until the queue has drained.
+     */
+    public boolean executeLast(String sessionId, Runnable task) {
+        return enqueue(sessionId, task, true);
+    }
+
+    private boolean enqueue(String sessionId, Runnable task, boolean last) {
+        long submittedAt = System.nanoTime();
+        Runnable timed = () -> {
+            queueWait.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+            task.run();
+        };
+
+        SerialQueue[] accepted = new SerialQueue[1];
+        queues.compute(sessionId, (id, queue) -> {
+            if (queue == null) {
+                queue = new SerialQueue(id);
+            }
+            if (queue.closing || (!last && queue.size.get() >= maxQueuedTasks)) {
+                return queue;
+            }
+            queue.closing = last;
+            queue.size.incrementAndGet();
+            queued.incrementAndGet();
+            queue.tasks.add(timed);
+            accepted[0] = queue;
+            return queue;
+        });
+        if (accepted[0] == null) {
+            return false;
+        }
+        accepted[0].schedule();
+        return true;
+    }
+
+    @PreDestroy
+    public void stop() {
+        workers.shutdown();
+    }
+}
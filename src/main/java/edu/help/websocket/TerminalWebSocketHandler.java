@@ -11,8 +11,9 @@ import java.util.concurrent.ConcurrentHashMap;
 import org.json.JSONObject;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
@@ -21,33 +22,39 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 
 import edu.help.dto.TerminalSession;
 import edu.help.dto.Order;
-import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPool;
-import redis.clients.jedis.JedisPooled;
-import redis.clients.jedis.Transaction;
-import redis.clients.jedis.exceptions.JedisDataException;
-import redis.clients.jedis.params.ScanParams;
-import redis.clients.jedis.resps.ScanResult;
-import static edu.help.config.ApiConfig.FULL_HTTP_PATH;
+import edu.help.dto.OrderEvent;
+import edu.help.service.OrderEventLog;
+import edu.help.service.OrderStore;
+import edu.help.service.OrderTransitionService;
+import edu.help.service.OrderTransitionService.Outcome;
+import edu.help.service.OrderTransitionService.Transition;
+import edu.help.service.OrderTransitionService.TransitionResult;
+import edu.help.service.RedisKeys;
+import redis.clients.jedis.UnifiedJedis;
 
 @Component
-public class TerminalWebSocketHandler extends TextWebSocketHandler {
+public class TerminalWebSocketHandler extends TextWebSocketHandler
+        implements BinaryProtocolHandlerDecorator.PayloadHandler {
 
     private static TerminalWebSocketHandler instance;
-    private final JedisPooled jedisPooled;
-    private final JedisPool jedisPool;
+    private final UnifiedJedis jedis;
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final Map<String, WebSocketSession> sessionMap = new ConcurrentHashMap<>(); // Session storage
-    private final OrderWebSocketHandler orderWebSocketHandler;
-    private final RestTemplate restTemplate;
-
-    public TerminalWebSocketHandler(JedisPooled jedisPooled, JedisPool jedisPool,
-            OrderWebSocketHandler orderWebSocketHandler, RestTemplate restTemplate) {
-        this.jedisPooled = jedisPooled;
-        this.jedisPool = jedisPool;
-        this.orderWebSocketHandler = orderWebSocketHandler;
+    // Keyed by the terminal's Redis key, so equal employee ids at different merchants stay apart
+    private final Map<String, WebSocketSession> employeeSessions = new ConcurrentHashMap<>(); // terminal key -> open session
+    private final Map<String, String> sessionEmployees = new ConcurrentHashMap<>(); // sessionId -> terminal key
+    private final OrderStore orderStore;
+    private final OrderTransitionService orderTransitionService;
+    private final OrderEventLog orderEventLog;
+    private final SessionRouter sessionRouter;
+
+    public TerminalWebSocketHandler(UnifiedJedis jedis, OrderStore orderStore,
+            OrderTransitionService orderTransitionService, OrderEventLog orderEventLog, SessionRouter sessionRouter) {
+        this.jedis = jedis;
         instance = this;
-        this.restTemplate = restTemplate;
+        this.orderStore = orderStore;
+        this.orderTransitionService = orderTransitionService;
+        this.orderEventLog = orderEventLog;
+        this.sessionRouter = sessionRouter;
 
     }
 
@@ -57,14 +64,26 @@ public class TerminalWebSocketHandler extends TextWebSocketHandler {
 
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        Map<String, Object> payloadMap;
         try {
             // Log the received message payload
             String payload = message.getPayload();
             System.out.println("Terminal WebSocket message received: " + payload);
 
             // Parse the JSON message
-            Map<String, Object> payloadMap = objectMapper.readValue(payload, Map.class);
+            payloadMap = objectMapper.readValue(payload, Map.class);
+        } catch (Exception e) {
+            e.printStackTrace();
+            sendErrorMessage(session, "An error occurred while processing the message.");
+            return;
+        }
+        handlePayload(session, payloadMap);
+    }
 
+    // Text frames once parsed, and CBOR frames straight from BinaryProtocolHandlerDecorator
+    @Override
+    public void handlePayload(WebSocketSession session, Map<String, Object> payloadMap) throws Exception {
+        try {
             // Extract the action from the payload
             String action = (String) payloadMap.get("action");
 
@@ -117,59 +136,87 @@ public class TerminalWebSocketHandler extends TextWebSocketHandler {
         System.out.println("Received employeeId: " + employeeId);
         System.out.println("Received merchantId: " + merchantId);
 
-        // Create the Redis key
-        String redisKey = String.valueOf(employeeId);
+        // Swap in the new session record atomically; whoever held the terminal before gets the old one back
+        String redisKey = RedisKeys.terminal(merchantId, employeeId);
+        TerminalSession newSession = new TerminalSession(merchantId, employeeId, session.getId());
+        String previous = jedis.setGet(redisKey, objectMapper.writeValueAsString(newSession));
+        System.out.println("TerminalSession stored in Redis: " + redisKey);
 
-        try (Jedis jedis = jedisPool.getResource()) {
-            jedis.watch(redisKey); // Watch the key for changes
-
-            // Check if there's an existing session for this terminal and close it
+        if (previous != null) {
             TerminalSession existingSession = null;
             try {
-                // Assuming the key holds JSON data, use jsonGet
-                existingSession = jedisPooled.jsonGet(redisKey, TerminalSession.class);
-            } catch (Exception e) {
+                existingSession = objectMapper.readValue(previous, TerminalSession.class);
+            } catch (JsonProcessingException e) {
                 e.printStackTrace();
             }
 
-            if (existingSession != null) {
-                String existingSessionId = existingSession.getSessionId();
-                WebSocketSession existingWsSession = sessionMap.get(existingSessionId);
-
-                // Send a terminate message before closing the existing session
-                if (existingWsSession != null && existingWsSession.isOpen()) {
-                    JSONObject terminateMessage = new JSONObject();
-                    terminateMessage.put("terminate", true);
-                    existingWsSession.sendMessage(new TextMessage(terminateMessage.toString()));
-                    existingWsSession.close();
+            // Send a terminate message before closing the existing session, which may be on another node
+            if (existingSession != null && !session.getId().equals(existingSession.getSessionId())) {
+                JSONObject terminateMessage = new JSONObject();
+                terminateMessage.put("terminate", true);
+                if (sessionRouter.close(existingSession.getSessionId(), terminateMessage.toString())) {
                     System.out.println("Closing the connection for..." + employeeId);
                 }
             }
+        }
 
-            // Store the new session in Redis and in the session map
-            TerminalSession newSession = new TerminalSession(merchantId, employeeId, session.getId());
-
-            Transaction transaction = jedis.multi(); // Start the transaction
-            System.out.println("Attempting to execute Redis transaction...");
+        sessionRouter.register(session); // Record this node as the session's owner
+        registerEmployeeSession(redisKey, session);
+        System.out.println("TerminalSession stored in Redis: " + session);
+        session.sendMessage(new TextMessage("Initialization successful for employee " + employeeId));
 
-            // Use jsonSet for storing JSON objects
-            transaction.jsonSet(redisKey, objectMapper.writeValueAsString(newSession));
+        // A terminal that kept the seq of the last event it saw only needs what it missed
+        if (payload.get("resumeFrom") instanceof String resumeFrom && resume(session, merchantId, employeeId, resumeFrom)) {
+            return;
+        }
+        handleRefreshAction(session, payload);
+    }
 
-            System.out.println("TerminalSession stored in Redis: " + redisKey);
-            List<Object> results = transaction.exec(); // Execute the transaction
-            System.out.println("Transaction results: " + results);
+    /**
+     * Replays this terminal's events after {@code resumeFrom} from the
+     * merchant's event stream. Returns false if the stream no longer reaches
+     * back that far, in which case the caller sends a full refresh. Live
+     * events may interleave with the replay, so the terminal drops any frame
+     * whose seq it has already seen.
+     */
+    private boolean resume(WebSocketSession session, int merchantId, int employeeId, String resumeFrom)
+            throws IOException {
+        List<OrderEvent> events = orderEventLog.readSince(merchantId, resumeFrom);
+        if (events == null) {
+            System.out.println("Terminal " + employeeId + " cannot resume from " + resumeFrom + ", refreshing");
+            return false;
+        }
 
-            if (results == null || results.isEmpty()) {
-                sendErrorMessage(session, "Initialization failed due to a conflict. Please try again.");
-                return;
+        int replayed = 0;
+        for (OrderEvent event : events) {
+            if (event.getOrder().getEmployeeId() != employeeId) {
+                continue;
             }
+            session.sendMessage(OutboundFrames.terminalEvent(session, event));
+            replayed++;
+        }
+        System.out.println("Resumed terminal " + employeeId + " from " + resumeFrom + ": " + replayed + " events");
+        return true;
+    }
 
-            sessionMap.put(session.getId(), session); // Store the session in the session map
-            System.out.println("TerminalSession stored in Redis: " + session);
-            session.sendMessage(new TextMessage("Initialization successful for employee " + employeeId));
-            handleRefreshAction(session, payload);
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+        sessionRouter.unregister(session);
+
+        // Only drop the registry entry if it still points at this session
+        String terminalKey = sessionEmployees.remove(session.getId());
+        if (terminalKey != null) {
+            employeeSessions.remove(terminalKey, session);
+            System.out.println("Terminal session closed for " + terminalKey + ": " + session.getId());
+        }
+    }
 
+    private void registerEmployeeSession(String terminalKey, WebSocketSession session) {
+        WebSocketSession previous = employeeSessions.put(terminalKey, session);
+        if (previous != null && previous != session) {
+            sessionEmployees.remove(previous.getId(), terminalKey);
         }
+        sessionEmployees.put(session.getId(), terminalKey);
     }
 
     @Transactional
@@ -178,59 +225,20 @@ public class TerminalWebSocketHandler extends TextWebSocketHandler {
         int customerId = (int) payload.get("customerId");
         int employeeId = (int) payload.get("employeeId");
 
-        String orderRedisKey = merchantId + "." + employeeId + "." + customerId;
-
-        try (Jedis jedis = jedisPool.getResource()) {
-            jedis.watch(orderRedisKey); // Watch the key for changes
-
-            // Retrieve the JSON object from Redis
-            Object orderJsonObj = jedisPooled.jsonGet(orderRedisKey);
-
-            if (orderJsonObj == null) {
-                sendErrorMessage(session, "Order does not exist.");
-                jedis.unwatch(); // Unwatch if the order doesn't exist
-                return;
-            }
-
-            // Convert the retrieved Object to a JSON string
-            String orderJson = objectMapper.writeValueAsString(orderJsonObj);
+        // Status check and update happen atomically inside Redis
+        TransitionResult result = orderTransitionService.apply(merchantId, employeeId, customerId,
+                Transition.DELIVER);
 
-            // Deserialize the JSON string into an Order object
-            Order order = objectMapper.readValue(orderJson, Order.class);
-
-            String currentStatus = order.getStatus();
-
-            if (!"ready".equals(currentStatus) && !"arrived".equals(currentStatus)) {
-                sendErrorMessage(session, "Only ready or arrived orders can be marked as delivered.");
-                jedis.unwatch(); // Unwatch if the order is not ready
-                return;
-            }
-
-            // Update the order to set status to "delivered"
-            order.setStatus("delivered");
-
-            Transaction transaction = jedis.multi(); // Start the transaction
-            String updatedOrderJson = objectMapper.writeValueAsString(order);
-            transaction.jsonSet(orderRedisKey, updatedOrderJson);
-            List<Object> results = transaction.exec(); // Execute the transaction
-
-            if (results == null || results.isEmpty()) {
-                sendErrorMessage(session, "Failed to deliver the order due to a conflict. Please try again.");
-                return;
-            }
-
-            // Send the order to PostgreSQL
-            restTemplate.postForLocation(
-                    FULL_HTTP_PATH + "/employee/save",
-                    order);
-
-            Map<String, Object> data = new HashMap<>();
-            data.put("update", Collections.singletonList(order));
-
-            broadcastToEmployee(employeeId, data);
-
-            orderWebSocketHandler.updateCustomer(order);
+        if (result.getOutcome() == Outcome.MISSING) {
+            sendErrorMessage(session, "Order does not exist.");
+            return;
+        }
+        if (result.getOutcome() == Outcome.REJECTED) {
+            sendErrorMessage(session, "Only ready or arrived orders can be marked as delivered.");
+            return;
         }
+
+        finishOrder(result.getOrder());
     }
 
     @Transactional
@@ -239,52 +247,31 @@ public class TerminalWebSocketHandler extends TextWebSocketHandler {
         int customerId = (int) payload.get("customerId");
         int employeeId = (int) payload.get("employeeId");
 
-        String orderRedisKey = merchantId + "." + employeeId + "." + customerId;
-
-        try (Jedis jedis = jedisPool.getResource()) {
-            jedis.watch(orderRedisKey); // Watch the key for changes
-
-            // Retrieve the JSON object from Redis
-            Object orderJsonObj = jedisPooled.jsonGet(orderRedisKey);
-
-            if (orderJsonObj == null) {
-                sendErrorMessage(session, "Order does not exist.");
-                jedis.unwatch(); // Unwatch if the order doesn't exist
-                return;
-            }
-
-            // Convert the retrieved Object to a JSON string
-            String orderJson = objectMapper.writeValueAsString(orderJsonObj);
+        // Status check and update happen atomically inside Redis
+        TransitionResult result = orderTransitionService.apply(merchantId, employeeId, customerId,
+                Transition.CANCEL);
 
-            // Deserialize the JSON string into an Order object
-            Order order = objectMapper.readValue(orderJson, Order.class);
-
-            // Update the order status to "canceled"
-            order.setStatus("canceled");
-
-            // Start the transaction
-            Transaction transaction = jedis.multi();
-            // Serialize the updated Order object back to JSON and save it to Redis
-            String updatedOrderJson = objectMapper.writeValueAsString(order);
-            transaction.jsonSet(orderRedisKey, updatedOrderJson);
-            List<Object> results = transaction.exec(); // Execute the transaction
-
-            if (results == null || results.isEmpty()) {
-                sendErrorMessage(session, "Failed to cancel the order due to a conflict. Please try again.");
-                return;
-            }
-
-            // Send the order to PostgreSQL
-            restTemplate.postForLocation(
-                    FULL_HTTP_PATH + "/employee/save",
-                    order);
+        if (result.getOutcome() == Outcome.MISSING) {
+            sendErrorMessage(session, "Order does not exist.");
+            return;
+        }
+        if (result.getOutcome() == Outcome.REJECTED) {
+            sendErrorMessage(session, "Order is already " + result.getPreviousStatus() + ".");
+            return;
+        }
 
-            Map<String, Object> data = new HashMap<>();
-            data.put("update", Collections.singletonList(order));
+        finishOrder(result.getOrder());
+    }
 
-            broadcastToEmployee(employeeId, data);
-            orderWebSocketHandler.updateCustomer(order);
-        }
+    /**
+     * Follow-up once an order has reached delivered or canceled: drop it from
+     * the customer's index, which lives outside the merchant's slot. The
+     * transition already queued the Postgres save and logged the event for
+     * the terminal update and the customer notification.
+     */
+    public void finishOrder(Order order) {
+        orderStore.unindexCustomerOrders(order.getCustomerId(), Collections.singletonList(
+                RedisKeys.order(order.getMerchantId(), order.getEmployeeId(), order.getCustomerId())));
     }
 
     @Transactional
@@ -293,72 +280,29 @@ public class TerminalWebSocketHandler extends TextWebSocketHandler {
         int customerId = (int) payload.get("customerId");
         int employeeId = (int) payload.get("employeeId");
 
-        String orderRedisKey = merchantId + "." + employeeId + "." + customerId;
-
-        try (Jedis jedis = jedisPool.getResource()) {
-            jedis.watch(orderRedisKey); // Watch the key for changes
-
-            // Retrieve the JSON object from Redis
-            Object orderJsonObj = jedisPooled.jsonGet(orderRedisKey);
-
-            if (orderJsonObj == null) {
-                sendErrorMessage(session, "Order does not exist.");
-                jedis.unwatch(); // Unwatch if the order doesn't exist
-                return;
-            }
+        // Status check and update happen atomically inside Redis
+        TransitionResult result = orderTransitionService.apply(merchantId, employeeId, customerId,
+                Transition.READY);
 
-            // Convert the retrieved Object to a JSON string
-            String orderJson;
-            try {
-                orderJson = objectMapper.writeValueAsString(orderJsonObj);
-            } catch (JsonProcessingException e) {
-                sendErrorMessage(session, "Failed to process order data.");
-                jedis.unwatch(); // Unwatch if processing fails
-                return;
-            }
-
-            // Deserialize the JSON string into an Order object
-            Order order;
-            try {
-                order = objectMapper.readValue(orderJson, Order.class);
-            } catch (JsonProcessingException e) {
-                sendErrorMessage(session, "Failed to process order data.");
-                jedis.unwatch(); // Unwatch if processing fails
-                return;
-            }
-
-            String currentStatus = order.getStatus();
-
-            if ("ready".equals(currentStatus)) {
+        if (result.getOutcome() == Outcome.MISSING) {
+            sendErrorMessage(session, "Order does not exist.");
+            return;
+        }
+        if (result.getOutcome() == Outcome.REJECTED) {
+            if ("ready".equals(result.getPreviousStatus())) {
                 sendErrorMessage(session, "Order is already marked as ready.");
-                jedis.unwatch(); // Unwatch if the order is already ready
-                return;
-            }
-
-            // Update the order to set status to "ready"
-            order.setStatus("ready");
-
-            Transaction transaction = jedis.multi(); // Start the transaction
-            String updatedOrderJson = objectMapper.writeValueAsString(order);
-            transaction.jsonSet(orderRedisKey, updatedOrderJson);
-            List<Object> results = transaction.exec(); // Execute the transaction
-
-            if (results == null || results.isEmpty()) {
-                sendErrorMessage(session, "Failed to mark the order as ready due to a conflict. Please try again.");
-                return;
+            } else {
+                sendErrorMessage(session, "Order is already " + result.getPreviousStatus() + ".");
             }
-
-            Map<String, Object> data = new HashMap<>();
-            data.put("update", Collections.singletonList(order));
-            broadcastToEmployee(employeeId, data);
-            orderWebSocketHandler.updateCustomer(order);
+            return;
         }
+        // The terminals and the customer hear about it through the event the transition logged
     }
 
     private void sendErrorMessage(WebSocketSession session, String errorMessage) throws IOException {
         Map<String, String> errorResponse = new HashMap<>();
         errorResponse.put("error", errorMessage);
-        session.sendMessage(new TextMessage(objectMapper.writeValueAsString(errorResponse)));
+        session.sendMessage(OutboundFrames.map(session, errorResponse));
     }
 
     @Transactional
@@ -366,85 +310,45 @@ public class TerminalWebSocketHandler extends TextWebSocketHandler {
         int merchantId = (int) payload.get("merchantId");
         int employeeId = (int) payload.get("employeeId");
 
-        try (Jedis jedis = jedisPool.getResource()) {
-            String keyPattern = merchantId + "." + employeeId + ".*";
-            // Prepare to scan Redis for keys matching the pattern
-            ScanParams scanParams = new ScanParams().match(keyPattern);
-            String cursor = "0";
-
-            List<Order> orders = new ArrayList<>();
+        // Optional paging for terminals with many open tabs
+        long offset = payload.get("offset") instanceof Number n ? n.longValue() : 0;
+        long limit = payload.get("limit") instanceof Number n ? n.longValue() : 0;
 
-            System.out.println("Scanning Redis with pattern: " + keyPattern);
-            System.out.println("Initial cursor value: " + cursor);
-
-            do {
-                // Scan for keys with the given pattern
-                ScanResult<String> scanResult = jedis.scan(cursor, scanParams);
-                cursor = scanResult.getCursor();
-                List<String> keys = scanResult.getResult();
+        try {
+            // Taken before the read, so a resume from it can only repeat changes, never miss one
+            String seq = orderEventLog.lastId(merchantId);
 
-                // Print out the keys being scanned
-                System.out.println("Keys scanned in this iteration:");
-                for (String key : keys) {
-                    System.out.println(" - " + key);
-                }
+            // Ranged read of the terminal's index, oldest order first
+            List<String> orderKeys = orderStore.getEmployeeOrderKeys(merchantId, employeeId, offset, limit);
+            Map<String, Order> indexedOrders = orderStore.getOrders(orderKeys);
 
-                for (String key : keys) {
-                    // Match the format merchantId.# and ensure the part after the dot is entirely
-                    // numeric
-                    if (key.matches(merchantId + "\\." + employeeId + "\\.\\d+")) {
-                        try {
-                            // Retrieve the JSON object from Redis
-                            Object orderJsonObj = jedisPooled.jsonGet(key);
-
-                            if (orderJsonObj == null) {
-                                System.out.println("Order does not exist for key: " + key);
-                                continue;
-                            }
-
-                            // Convert the retrieved Object directly to an Order object
-                            Order order = objectMapper.convertValue(orderJsonObj, Order.class);
-
-                            // Exclude session-related data
-                            if (!orderJsonObj.toString().contains("active")) {
-                                orders.add(order);
-                            } else {
-                                System.out.println("Skipping session-related data for key Id: " + key);
-                            }
-                        } catch (JedisDataException e) {
-                            System.err.println(
-                                    "Encountered JedisDataException for key: " + key + " - " + e.getMessage());
-                            // Optionally handle recovery or cleanup here
-                        }
-                    } else {
-                        System.out.println("Skipping key that does not match format: " + key);
-                    }
-                }
-            } while (!"0".equals(cursor)); // Continue scanning until cursor is "0"
-
-            // Convert the list of Order objects to a Map and send it to the client
-            if (!orders.isEmpty()) {
-                List<Map<String, Object>> ordersData = new ArrayList<>();
-                for (Order order : orders) {
-                    Map<String, Object> orderData = objectMapper.convertValue(order, Map.class);
-                    ordersData.add(orderData);
-                    // Debug: Log each order being sent
-                    System.out.println("Converted Order to Map: " + orderData);
+            List<Order> orders = new ArrayList<>();
+            List<String> staleKeys = new ArrayList<>();
+            for (String key : orderKeys) {
+                Order order = indexedOrders.get(key);
+                if (order == null) {
+                    System.out.println("Removing stale index entry for key: " + key);
+                    staleKeys.add(key);
+                    continue;
                 }
-
-                // Create a map with the key "orders" and value as the list of order maps
-                Map<String, Object> responseMap = new HashMap<>();
-                responseMap.put("orders", ordersData);
-
-                // Convert the map to a JSON string
-                String ordersJsonArray = objectMapper.writeValueAsString(responseMap);
-                System.out.println("Final JSON being sent: " + ordersJsonArray); // Debug: Log the final JSON string
-                session.sendMessage(new TextMessage(ordersJsonArray));
-            } else {
-                System.out.println("No orders found, sending empty list."); // Debug: Log if no orders found
-                session.sendMessage(new TextMessage("{\"orders\":[]}"));
+                orders.add(order);
+            }
+            orderStore.unindexEmployeeOrders(merchantId, employeeId, staleKeys);
+
+            // Create a map with the key "orders" and value as the list of orders
+            Map<String, Object> responseMap = new HashMap<>();
+            responseMap.put("orders", orders);
+            responseMap.put("seq", seq);
+            if (limit > 0) {
+                responseMap.put("offset", offset);
+                responseMap.put("total", orderStore.countEmployeeOrders(merchantId, employeeId));
             }
 
+            WebSocketMessage<?> frame = OutboundFrames.map(session, responseMap);
+            System.out.println("Sending " + orders.size() + " orders to employee " + employeeId + ", "
+                    + frame.getPayloadLength() + " bytes");
+            session.sendMessage(frame);
+
         } catch (Exception e) {
             e.printStackTrace(); // Handle exceptions
             sendErrorMessage(session, "Error retrieving orders");
@@ -452,55 +356,43 @@ public class TerminalWebSocketHandler extends TextWebSocketHandler {
 
     }
 
-    public void broadcastToEmployee(int employeeId, Map<String, Object> data) throws IOException {
-        // Prepare the data to be broadcasted
-        String message = objectMapper.writeValueAsString(data);
-
-        // Debug: Print the message that is being broadcasted
-        System.out.println("Broadcasting message to employee " + employeeId + ": " + message);
-
-        // Step 1: Scan Redis for keys matching the format merchantId.AlphabeticLetter
-        String pattern = String.valueOf(employeeId);
-
-        List<String> matchingSessionIds = new ArrayList<>();
-
-        try (Jedis jedis = jedisPool.getResource()) {
-            ScanParams scanParams = new ScanParams().match(pattern);
-            String cursor = "0";
-
-            do {
-                ScanResult<String> scanResult = jedis.scan(cursor, scanParams);
-                cursor = scanResult.getCursor();
+    public void broadcastToEmployee(int merchantId, int employeeId, Map<String, Object> data) throws IOException {
+        sendToEmployee(merchantId, employeeId, OutboundFrames.map(data), null, null, 0);
+    }
 
-                for (String key : scanResult.getResult()) {
-                    // Step 2: Retrieve the TerminalSession object from Redis
-                    TerminalSession terminalSession = jedisPooled.jsonGet(key, TerminalSession.class);
+    // Sends an order event to its terminal, tagged with the event's seq
+    public void broadcastEvent(OrderEvent event) throws IOException {
+        Order order = event.getOrder();
+        sendToEmployee(order.getMerchantId(), order.getEmployeeId(), OutboundFrames.terminalEvent(event),
+                OutboundFrames.terminalEventDelta(event),
+                RedisKeys.order(order.getMerchantId(), order.getEmployeeId(), order.getCustomerId()),
+                order.getVersion());
+    }
 
-                    if (terminalSession != null // && terminalSession.getActive()
-                    ) {
-                        matchingSessionIds.add(terminalSession.getSessionId());
-                    }
-                }
-            } while (!"0".equals(cursor));
+    /**
+     * Terminals that take deltas get {@code deltaFrame} in place of
+     * {@code frame}, if given. With an {@code orderKey} the frame is skipped
+     * if the terminal has already been sent this or a later version of that order.
+     */
+    private void sendToEmployee(int merchantId, int employeeId, TextMessage frame, TextMessage deltaFrame,
+            String orderKey, long version) throws IOException {
+        // Debug: Print the message that is being broadcasted
+        System.out.println("Broadcasting message to employee " + employeeId + ": " + frame.getPayload());
+
+        // The registry only holds sessions initialized on this node
+        WebSocketSession wsSession = employeeSessions.get(RedisKeys.terminal(merchantId, employeeId));
+        if (wsSession != null && wsSession.isOpen()) {
+            System.out.println("Sending message to session Id: " + wsSession.getId());
+            sessionRouter.sendUpdate(wsSession.getId(), frame, deltaFrame, orderKey, version);
+            return;
         }
 
-        // Debug: Print the matching session Ids
-        System.out.println("Matching session Id for employee " + employeeId + ": " + matchingSessionIds);
-
-        // Step 3: Filter the sessionMap to find open sessions that match the retrieved
-        // sessionIds
-        for (Map.Entry<String, WebSocketSession> entry : sessionMap.entrySet()) {
-            String sessionId = entry.getKey();
-            WebSocketSession wsSession = entry.getValue();
-
-            if (matchingSessionIds.contains(sessionId) && wsSession.isOpen()) {
-                // Debug: Print the session Id before sending the message
-                System.out.println("Sending message to session Id: " + sessionId);
-                wsSession.sendMessage(new TextMessage(message));
-            } else {
-                // Debug: If session is not open or does not match, log it
-                System.out.println("Session Id: " + sessionId + " is not open or does not match. Skipping.");
-            }
+        // Otherwise route through the terminal's session record to the node that holds it
+        String record = jedis.get(RedisKeys.terminal(merchantId, employeeId));
+        TerminalSession terminalSession = record == null ? null : objectMapper.readValue(record, TerminalSession.class);
+        if (terminalSession == null
+                || !sessionRouter.sendUpdate(terminalSession.getSessionId(), frame, deltaFrame, orderKey, version)) {
+            System.out.println("No open terminal session for employee " + employeeId + ". Skipping.");
         }
     }
 }
\ No newline at end of file
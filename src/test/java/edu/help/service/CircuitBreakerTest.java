@@ -0,0 +1,157 @@
+package edu.help.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * {@link CircuitBreaker} on a hand-driven clock: a window of 10 calls, at
+ * least 4 of them before it may open, a 50% failure threshold, 1s open and
+ * 2 half-open trial calls.
+ */
+class CircuitBreakerTest {
+
+    private static final long OPEN_MILLIS = 1000;
+    private static final int HALF_OPEN_CALLS = 2;
+
+    private long now;
+    private CircuitBreaker breaker;
+
+    @BeforeEach
+    void createBreaker() {
+        now = 0;
+        breaker = new CircuitBreaker("test", 10, 4, 50, OPEN_MILLIS, HALF_OPEN_CALLS, () -> now);
+    }
+
+    @Test
+    void staysClosedBelowTheMinimumCalls() {
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure(breaker.tryAcquire());
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void staysClosedBelowTheFailureRate() {
+        for (int i = 0; i < 10; i++) {
+            CircuitBreaker.Permit permit = breaker.tryAcquire();
+            if (i % 3 == 2) {
+                breaker.onFailure(permit);
+            } else {
+                breaker.onSuccess(permit);
+            }
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void opensAtTheFailureRateAndRejectsCalls() {
+        open();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        now += OPEN_MILLIS - 1;
+        assertNull(breaker.tryAcquire());
+    }
+
+    @Test
+    void halfOpenAfterTheOpenPeriodLetsOnlyTheTrialCallsThrough() {
+        open();
+        now += OPEN_MILLIS;
+
+        assertNotNull(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertNotNull(breaker.tryAcquire());
+        assertNull(breaker.tryAcquire());
+    }
+
+    @Test
+    void closesWhenEveryTrialSucceeds() {
+        open();
+        now += OPEN_MILLIS;
+        List<CircuitBreaker.Permit> trials = trials();
+
+        breaker.onSuccess(trials.get(0));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onSuccess(trials.get(1));
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        // The window starts over, so three failures are not enough to reopen it
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure(breaker.tryAcquire());
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void reopensWhenATrialFails() {
+        open();
+        now += OPEN_MILLIS;
+        List<CircuitBreaker.Permit> trials = trials();
+
+        breaker.onSuccess(trials.get(0));
+        breaker.onFailure(trials.get(1));
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertNull(breaker.tryAcquire());
+        now += OPEN_MILLIS;
+        assertNotNull(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+
+    @Test
+    void callsFromBeforeTheCircuitOpenedDoNotDecideTheTrial() {
+        CircuitBreaker.Permit slowSuccess = breaker.tryAcquire();
+        CircuitBreaker.Permit slowFailure = breaker.tryAcquire();
+        open();
+        now += OPEN_MILLIS;
+        List<CircuitBreaker.Permit> trials = trials();
+
+        breaker.onFailure(slowFailure);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onSuccess(slowSuccess);
+        breaker.onSuccess(trials.get(0));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        breaker.onSuccess(trials.get(1));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void trialsFromAnEarlierHalfOpenPeriodAreIgnored() {
+        open();
+        now += OPEN_MILLIS;
+        List<CircuitBreaker.Permit> first = trials();
+        breaker.onFailure(first.get(0));
+        now += OPEN_MILLIS;
+        List<CircuitBreaker.Permit> second = trials();
+
+        breaker.onSuccess(first.get(1));
+        breaker.onSuccess(second.get(0));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        breaker.onSuccess(second.get(1));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            breaker.onFailure(breaker.tryAcquire());
+        }
+    }
+
+    private List<CircuitBreaker.Permit> trials() {
+        List<CircuitBreaker.Permit> trials = new ArrayList<>();
+        for (int i = 0; i < HALF_OPEN_CALLS; i++) {
+            trials.add(breaker.tryAcquire());
+        }
+        return trials;
+    }
+}
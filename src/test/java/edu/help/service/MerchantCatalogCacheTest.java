@@ -0,0 +1,206 @@
+package edu.help.service;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import edu.help.dto.OrderRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import redis.clients.jedis.UnifiedJedis;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link MerchantCatalogCache} loading from {@link PostgresStub}: items 1-5,
+ * item 4 sold out, only items 1 and 2 payable with points. Merchant 500's
+ * catalog always answers HTTP 500. Invalidations go through
+ * {@link TestRedis}.
+ */
+class MerchantCatalogCacheTest {
+
+    private static final int MERCHANT_ID = 3;
+    private static final int FAILING_MERCHANT = 500;
+    private static final long TTL_SECONDS = 1;
+
+    private final Map<Integer, AtomicInteger> catalogLoads = new ConcurrentHashMap<>();
+
+    private UnifiedJedis jedis;
+    private HttpServer server;
+    private MerchantCatalogCache cache;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        jedis = TestRedis.jedis();
+        jedis.flushAll();
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/employee/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            if (path.endsWith("/catalog")) {
+                int merchantId = Integer.parseInt(path.split("/")[2]);
+                catalogLoads.computeIfAbsent(merchantId, id -> new AtomicInteger()).incrementAndGet();
+                if (merchantId == FAILING_MERCHANT) {
+                    exchange.sendResponseHeaders(500, -1);
+                    exchange.close();
+                    return;
+                }
+            }
+            PostgresStub.handle(exchange);
+        });
+        server.start();
+
+        HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+        PostgresClient postgresClient = new PostgresClient(httpClient, new SimpleMeterRegistry(),
+                "http://localhost:" + server.getAddress().getPort(), 2000, 20, 1000, 100, 10000, 3, 64);
+        cache = new MerchantCatalogCache(postgresClient, jedis, TTL_SECONDS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cache.stop();
+        server.stop(0);
+    }
+
+    @Test
+    void passesOrdersUncheckedUntilTheSnapshotIsIn() throws Exception {
+        assertNull(cache.validate(request(MERCHANT_ID, 4, "regular")));
+
+        awaitSnapshot(MERCHANT_ID);
+        assertEquals(1, loads(MERCHANT_ID));
+    }
+
+    @Test
+    void refusesUnknownAndSoldOutItems() throws Exception {
+        awaitSnapshot(MERCHANT_ID);
+
+        assertNull(cache.validate(request(MERCHANT_ID, 1, "regular")));
+        assertNull(cache.validate(request(MERCHANT_ID, 5, "regular")));
+        assertNotNull(cache.validate(request(MERCHANT_ID, 4, "regular")));
+        assertNotNull(cache.validate(request(MERCHANT_ID, 99, "regular")));
+        assertEquals(1, loads(MERCHANT_ID));
+    }
+
+    @Test
+    void refusesPointsForIneligibleItems() throws Exception {
+        awaitSnapshot(MERCHANT_ID);
+
+        assertNull(cache.validate(request(MERCHANT_ID, 1, "points")));
+        assertNull(cache.validate(request(MERCHANT_ID, 2, "points")));
+        assertEquals("Some items in your order can't be paid for with points.",
+                cache.validate(request(MERCHANT_ID, 3, "points")));
+        assertNull(cache.validate(request(MERCHANT_ID, 3, "regular")));
+    }
+
+    @Test
+    void failedLoadIsRememberedUntilItExpires() throws Exception {
+        cache.validate(request(FAILING_MERCHANT, 4, "regular"));
+        awaitLoads(FAILING_MERCHANT, 1);
+        Thread.sleep(200);
+
+        for (int i = 0; i < 10; i++) {
+            assertNull(cache.validate(request(FAILING_MERCHANT, 4, "regular")));
+        }
+        assertEquals(1, loads(FAILING_MERCHANT));
+
+        Thread.sleep(TTL_SECONDS * 1000 + 100);
+        cache.validate(request(FAILING_MERCHANT, 4, "regular"));
+        awaitLoads(FAILING_MERCHANT, 2);
+    }
+
+    @Test
+    void expiredSnapshotIsNotUsedAndIsReloaded() throws Exception {
+        awaitSnapshot(MERCHANT_ID);
+
+        Thread.sleep(TTL_SECONDS * 1000 + 100);
+        assertNull(cache.validate(request(MERCHANT_ID, 4, "regular")));
+
+        awaitSnapshot(MERCHANT_ID);
+        assertEquals(2, loads(MERCHANT_ID));
+    }
+
+    @Test
+    void invalidationDropsTheSnapshot() throws Exception {
+        awaitSnapshot(MERCHANT_ID);
+
+        cache.invalidate(MERCHANT_ID);
+        assertNull(cache.validate(request(MERCHANT_ID, 4, "regular")));
+
+        // A reload started in the invalidation's millisecond is thrown away, so it may take two
+        awaitSnapshot(MERCHANT_ID);
+        assertTrue(loads(MERCHANT_ID) >= 2);
+    }
+
+    @Test
+    void publishedInvalidationDropsTheSnapshot() throws Exception {
+        cache.start();
+        awaitSnapshot(MERCHANT_ID);
+
+        // Doubles as the wait for the subscription; a message that is not a merchantId is ignored
+        long deadline = System.currentTimeMillis() + 5000;
+        while (jedis.publish(RedisKeys.CATALOG_CHANNEL, "not-a-merchant") == 0) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Cache never subscribed to " + RedisKeys.CATALOG_CHANNEL);
+            }
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        assertNotNull(cache.validate(request(MERCHANT_ID, 4, "regular")));
+
+        jedis.publish(RedisKeys.CATALOG_CHANNEL, String.valueOf(MERCHANT_ID));
+        deadline = System.currentTimeMillis() + 5000;
+        while (cache.validate(request(MERCHANT_ID, 4, "regular")) != null) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Snapshot was never dropped");
+            }
+            Thread.sleep(10);
+        }
+
+        awaitSnapshot(MERCHANT_ID);
+        assertTrue(loads(MERCHANT_ID) >= 2);
+    }
+
+    // Validates a sold-out item until the snapshot that refuses it is in
+    private void awaitSnapshot(int merchantId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cache.validate(request(merchantId, 4, "regular")) == null) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Catalog for merchant " + merchantId + " never loaded");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private void awaitLoads(int merchantId, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (loads(merchantId) < count) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Expected " + count + " catalog loads, saw " + loads(merchantId));
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private int loads(int merchantId) {
+        AtomicInteger count = catalogLoads.get(merchantId);
+        return count == null ? 0 : count.get();
+    }
+
+    private static OrderRequest request(int merchantId, int itemId, String paymentType) {
+        OrderRequest request = PostgresClientTest.request(merchantId, itemId, 1);
+        request.getItems().get(0).setPaymentType(paymentType);
+        return request;
+    }
+}
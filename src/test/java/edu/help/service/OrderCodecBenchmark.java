@@ -0,0 +1,104 @@
+package edu.help.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.help.dto.Order;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * Compares the RedisJSON and hash order formats: encode/decode cost on the
+ * JVM, and per-order memory in Redis (MEMORY USAGE) when Redis Stack is
+ * reachable on localhost:6379.
+ *
+ * Run with: ./mvnw test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=edu.help.service.OrderCodecBenchmark
+ */
+public class OrderCodecBenchmark {
+
+    private static final int ORDERS = 1000;
+    private static final int ROUNDS = 200;
+
+    public static void main(String[] args) throws Exception {
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < ORDERS; i++) {
+            orders.add(sampleOrder(i));
+        }
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        HashOrderCodec hashCodec = new HashOrderCodec();
+
+        // JSON: the document RedisJSON stores, decoded the way the handlers used to
+        long jsonBytes = 0;
+        for (Order order : orders) {
+            jsonBytes += objectMapper.writeValueAsString(order).getBytes(StandardCharsets.UTF_8).length;
+        }
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (Order order : orders) {
+                objectMapper.readValue(objectMapper.writeValueAsString(order), Order.class);
+            }
+        }
+        double jsonNanos = (System.nanoTime() - start) / (double) (ROUNDS * ORDERS);
+
+        // Hash: field/value pairs as sent to HSET
+        long hashBytes = 0;
+        for (Order order : orders) {
+            for (Map.Entry<String, String> field : hashCodec.encode(order).entrySet()) {
+                hashBytes += field.getKey().length() + field.getValue().getBytes(StandardCharsets.UTF_8).length;
+            }
+        }
+        start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (Order order : orders) {
+                hashCodec.decode(hashCodec.encode(order));
+            }
+        }
+        double hashNanos = (System.nanoTime() - start) / (double) (ROUNDS * ORDERS);
+
+        System.out.printf("json: %d payload bytes/order, %.0f ns encode+decode%n", jsonBytes / ORDERS, jsonNanos);
+        System.out.printf("hash: %d payload bytes/order, %.0f ns encode+decode%n", hashBytes / ORDERS, hashNanos);
+
+        try (JedisPooled jedisPooled = new JedisPooled("localhost", 6379)) {
+            System.out.printf("json: %d bytes/order in Redis%n", memoryPerOrder(jedisPooled, new JsonOrderCodec(), orders));
+            System.out.printf("hash: %d bytes/order in Redis%n", memoryPerOrder(jedisPooled, hashCodec, orders));
+        } catch (JedisConnectionException e) {
+            System.out.println("Redis not reachable on localhost:6379, skipping MEMORY USAGE comparison");
+        }
+    }
+
+    private static long memoryPerOrder(JedisPooled jedisPooled, OrderCodec codec, List<Order> orders)
+            throws Exception {
+        List<String> keys = new ArrayList<>();
+        try (Pipeline pipeline = jedisPooled.pipelined()) {
+            for (int i = 0; i < orders.size(); i++) {
+                String key = "bench.codec." + codec.name() + "." + i;
+                keys.add(key);
+                codec.write(pipeline, key, orders.get(i));
+            }
+            pipeline.sync();
+        }
+
+        long total = 0;
+        for (String key : keys) {
+            total += jedisPooled.memoryUsage(key);
+        }
+        jedisPooled.del(keys.toArray(new String[0]));
+        return total / orders.size();
+    }
+
+    private static Order sampleOrder(int i) {
+        List<Order.ItemOrder> items = new ArrayList<>();
+        for (int item = 0; item < 1 + i % 4; item++) {
+            items.add(new Order.ItemOrder(100 + item, "Item " + item, item % 2 == 0 ? "regular" : "points", 1 + item));
+        }
+        return new Order("Customer " + i, 3, 1000 + i, 7, 18.75, 120, 3.25, 0.95, 1.60, true,
+                items, "bar", "unready", String.valueOf(1700000000000L + i), "session-" + i);
+    }
+}
@@ -0,0 +1,100 @@
+package edu.help.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.help.dto.Order;
+import redis.clients.jedis.JedisPooled;
+
+/**
+ * Compares per-key JSON.GET round trips against the pipelined codec read
+ * used by {@link OrderStore#getOrders}, which sends every key's read in one
+ * pipeline. Needs Redis Stack on localhost:6379.
+ *
+ * Run with: ./mvnw test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=edu.help.service.OrderFetchBenchmark
+ */
+public class OrderFetchBenchmark {
+
+    private static final int MERCHANT_ID = 990001;
+    private static final int EMPLOYEE_ID = 1;
+    private static final int CUSTOMER_BASE = 990000000; // keeps benchmark keys away from real customers
+    private static final int ITERATIONS = 50;
+
+    public static void main(String[] args) throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        try (JedisPooled jedisPooled = new JedisPooled("localhost", 6379)) {
+            OrderStore orderStore = new OrderStore(jedisPooled, "json", 1000);
+
+            for (int size : new int[] { 10, 100, 1000 }) {
+                List<String> keys = seed(jedisPooled, orderStore, size);
+
+                // Warm up both paths before measuring
+                perKeyFetch(jedisPooled, objectMapper, keys);
+                orderStore.getOrders(keys);
+
+                long[] perKey = new long[ITERATIONS];
+                long[] batched = new long[ITERATIONS];
+                for (int i = 0; i < ITERATIONS; i++) {
+                    long start = System.nanoTime();
+                    perKeyFetch(jedisPooled, objectMapper, keys);
+                    perKey[i] = System.nanoTime() - start;
+
+                    start = System.nanoTime();
+                    orderStore.getOrders(keys);
+                    batched[i] = System.nanoTime() - start;
+                }
+
+                System.out.printf("%5d orders: per-key JSON.GET p50=%.2fms p99=%.2fms | pipelined codec read p50=%.2fms p99=%.2fms%n",
+                        size, percentile(perKey, 50), percentile(perKey, 99),
+                        percentile(batched, 50), percentile(batched, 99));
+
+                for (String key : keys) {
+                    jedisPooled.del(key);
+                }
+                jedisPooled.del(RedisKeys.terminalOrders(MERCHANT_ID, EMPLOYEE_ID));
+                orderStore.removeOpenOrders(MERCHANT_ID, keys);
+                orderStore.removeOpenMerchant(MERCHANT_ID);
+            }
+        }
+    }
+
+    private static List<String> seed(JedisPooled jedisPooled, OrderStore orderStore, int size) throws Exception {
+        List<String> keys = new ArrayList<>();
+        for (int i = 1; i <= size; i++) {
+            int customerId = CUSTOMER_BASE + i;
+            Order order = new Order("Customer " + customerId, MERCHANT_ID, customerId, EMPLOYEE_ID,
+                    12.50, 0, 2.00, 0.50, 1.10, true,
+                    Collections.singletonList(new Order.ItemOrder(1, "Lager", "regular", 2)),
+                    "bar", "unready", String.valueOf(System.currentTimeMillis()), "session-" + customerId);
+            String key = RedisKeys.order(MERCHANT_ID, EMPLOYEE_ID, customerId);
+            orderStore.createOrder(key, order);
+            jedisPooled.del(RedisKeys.customerOrders(customerId));
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    // The pre-batching read path: one JSON.GET round trip per key
+    private static List<Order> perKeyFetch(JedisPooled jedisPooled, ObjectMapper objectMapper, List<String> keys)
+            throws Exception {
+        List<Order> orders = new ArrayList<>();
+        for (String key : keys) {
+            Object orderJsonObj = jedisPooled.jsonGet(key);
+            orders.add(objectMapper.readValue(objectMapper.writeValueAsString(orderJsonObj), Order.class));
+        }
+        return orders;
+    }
+
+    private static double percentile(long[] samples, int percentile) {
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        int index = Math.min(sorted.length - 1, (int) Math.ceil(percentile / 100.0 * sorted.length) - 1);
+        return sorted[index] / 1_000_000.0;
+    }
+}
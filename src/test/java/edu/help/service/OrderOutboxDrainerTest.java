@@ -0,0 +1,200 @@
+package edu.help.service;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+
+import edu.help.dto.Order;
+import edu.help.service.OrderTransitionService.Outcome;
+import edu.help.service.OrderTransitionService.Transition;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import redis.clients.jedis.StreamEntryID;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.params.XClaimParams;
+import redis.clients.jedis.params.XReadGroupParams;
+import redis.clients.jedis.resps.StreamEntry;
+
+import static edu.help.config.NodeConfig.NODE_ID;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * {@link OrderOutboxDrainer} against {@link TestRedis} and
+ * {@link PostgresStub}. Saves answer with whatever statuses a test queues
+ * for the customer, then 200.
+ */
+class OrderOutboxDrainerTest {
+
+    private static final int MERCHANT_ID = 3;
+    private static final int EMPLOYEE_ID = 7;
+    private static final String OUTBOX = RedisKeys.outbox(MERCHANT_ID);
+
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final Map<Integer, Queue<Integer>> statuses = new ConcurrentHashMap<>();
+    private final List<Integer> saved = new CopyOnWriteArrayList<>();
+
+    private UnifiedJedis jedis;
+    private HttpServer server;
+    private OrderStore orderStore;
+    private OrderTransitionService transitions;
+    private OrderOutbox outbox;
+    private PostgresClient postgresClient;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        jedis = TestRedis.jedis();
+        jedis.flushAll();
+        orderStore = new OrderStore(jedis, "hash", 1000);
+        transitions = new OrderTransitionService(jedis, orderStore, 3600, 1000);
+        outbox = new OrderOutbox(jedis, orderStore);
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        PostgresStub.register(server);
+        server.createContext("/employee/save", exchange -> {
+            Order order = objectMapper.readValue(exchange.getRequestBody().readAllBytes(), Order.class);
+            Integer status = statuses.getOrDefault(order.getCustomerId(), new ConcurrentLinkedQueue<>()).poll();
+            if (status == null) {
+                status = 200;
+                saved.add(order.getCustomerId());
+            }
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+        });
+        server.start();
+
+        HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+        // A breaker that never opens, so every attempt reaches the stub
+        postgresClient = new PostgresClient(httpClient, new SimpleMeterRegistry(),
+                "http://localhost:" + server.getAddress().getPort(), 2000, 20, 1000, 100, 10000, 3, 64);
+    }
+
+    @AfterEach
+    void stopStub() {
+        server.stop(0);
+    }
+
+    @Test
+    void savesAndDeletesFinishedOrders() throws Exception {
+        finish(1);
+        finish(2);
+        OrderOutboxDrainer drainer = drainer(50, 1, 3);
+
+        assertEquals(2, drainer.drain());
+
+        assertEquals(Set.of(1, 2), Set.copyOf(saved));
+        assertEquals(0, jedis.xlen(OUTBOX));
+        assertEquals(0, drainer.retrying());
+    }
+
+    @Test
+    void retriesAFailedSave() throws Exception {
+        fail(1, 503);
+        finish(1);
+        OrderOutboxDrainer drainer = drainer(50, 1, 3);
+
+        drainer.drain();
+        assertEquals(List.of(), saved);
+        assertEquals(1, jedis.xlen(OUTBOX));
+        assertEquals(1, drainer.retrying());
+
+        Thread.sleep(5);
+        drainer.drain();
+        assertEquals(List.of(1), saved);
+        assertEquals(0, jedis.xlen(OUTBOX));
+        assertEquals(0, drainer.retrying());
+    }
+
+    @Test
+    void deadLettersRefusedAndExhaustedEntries() throws Exception {
+        fail(1, 400);
+        fail(2, 503, 503, 503);
+        finish(1);
+        finish(2);
+        finish(3);
+        OrderOutboxDrainer drainer = drainer(50, 1, 3);
+
+        for (int pass = 0; pass < 3; pass++) {
+            drainer.drain();
+            Thread.sleep(5);
+        }
+
+        assertEquals(List.of(3), saved);
+        assertEquals(0, jedis.xlen(OUTBOX));
+        assertEquals(0, drainer.retrying());
+        List<StreamEntry> dead = jedis.xrange(RedisKeys.outboxDeadLetters(MERCHANT_ID), (StreamEntryID) null,
+                (StreamEntryID) null);
+        assertEquals(2, dead.size());
+        assertEquals("refused", dead.get(0).getFields().get("reason"));
+        assertEquals(1, objectMapper.readValue(dead.get(0).getFields().get("order"), Order.class).getCustomerId());
+        assertEquals("attempts", dead.get(1).getFields().get("reason"));
+        assertEquals(2, objectMapper.readValue(dead.get(1).getFields().get("order"), Order.class).getCustomerId());
+    }
+
+    @Test
+    void pagesPastBackingOffEntriesAndForgetsOnesClaimedAway() throws Exception {
+        fail(1, 503, 503, 503);
+        fail(2, 503, 503, 503);
+        finish(1);
+        finish(2);
+        finish(3);
+        // Handed to this node before a restart, so all three are already pending here
+        outbox.ensureGroup(MERCHANT_ID);
+        List<StreamEntryID> ids = new ArrayList<>();
+        for (Map.Entry<String, List<StreamEntry>> stream : jedis.xreadGroup(OrderOutbox.GROUP, NODE_ID,
+                XReadGroupParams.xReadGroupParams().count(10), Map.of(OUTBOX, StreamEntryID.UNRECEIVED_ENTRY))) {
+            stream.getValue().forEach(entry -> ids.add(entry.getID()));
+        }
+        // A page of two, with the two failing ones backing off past the next pass
+        OrderOutboxDrainer drainer = drainer(2, 500, 10);
+
+        drainer.drain();
+        assertEquals(List.of(), saved);
+        assertEquals(2, drainer.retrying());
+
+        drainer.drain();
+        assertEquals(List.of(3), saved);
+
+        // Another node takes customer 1's entry; the next scan, once customer 2 is due, no longer finds it here
+        jedis.xclaim(OUTBOX, OrderOutbox.GROUP, "other-node", 0, XClaimParams.xClaimParams(), ids.get(0));
+        Thread.sleep(600);
+        drainer.drain();
+        assertEquals(1, drainer.retrying());
+    }
+
+    private OrderOutboxDrainer drainer(int batchSize, long backoffMillis, int maxAttempts) {
+        return new OrderOutboxDrainer(outbox, postgresClient, batchSize, 10, backoffMillis, backoffMillis, 300_000,
+                maxAttempts);
+    }
+
+    private void fail(int customerId, Integer... responses) {
+        statuses.put(customerId, new ConcurrentLinkedQueue<>(List.of(responses)));
+    }
+
+    // Creates a ready order and delivers it, which queues it in the outbox
+    private void finish(int customerId) throws Exception {
+        Order order = new Order("Customer " + customerId, MERCHANT_ID, customerId, EMPLOYEE_ID, 16.0, 0, 3.2, 1.0,
+                1.28, true, List.of(new Order.ItemOrder(1, "Lager", "regular", 2)), "bar", "ready",
+                String.valueOf(1700000000000L + customerId), "session-" + customerId);
+        orderStore.createOrder(RedisKeys.order(MERCHANT_ID, EMPLOYEE_ID, customerId), order);
+        assertEquals(Outcome.APPLIED,
+                transitions.apply(MERCHANT_ID, EMPLOYEE_ID, customerId, Transition.DELIVER).getOutcome());
+    }
+}
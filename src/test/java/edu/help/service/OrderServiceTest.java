@@ -0,0 +1,218 @@
+package edu.help.service;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+
+import edu.help.dto.OrderEvent;
+import edu.help.dto.OrderRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import redis.clients.jedis.UnifiedJedis;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Create coalescing, replay and claim handling in {@link OrderService},
+ * against {@link TestRedis} and {@link PostgresStub}. The stub's
+ * processOrder can be held back to keep a create in flight.
+ */
+class OrderServiceTest {
+
+    private static final int MERCHANT_ID = 3;
+    private static final String ORDER_KEY = RedisKeys.order(MERCHANT_ID, 1, 42);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicInteger backendCreates = new AtomicInteger();
+    private volatile CountDownLatch backendGate = new CountDownLatch(0);
+
+    private UnifiedJedis jedis;
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private OrderStore orderStore;
+    private OrderTransitionService transitions;
+    private OrderEventLog eventLog;
+    private OrderService orderService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        jedis = TestRedis.jedis();
+        jedis.flushAll();
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/employee/", exchange -> {
+            if (exchange.getRequestURI().getPath().endsWith("/processOrder")) {
+                backendCreates.incrementAndGet();
+                try {
+                    backendGate.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            PostgresStub.handle(exchange);
+        });
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+        PostgresClient postgresClient = new PostgresClient(httpClient, new SimpleMeterRegistry(),
+                "http://localhost:" + server.getAddress().getPort(), 10000, 20, 10, 50, 10000, 3, 64);
+        orderStore = spy(new OrderStore(jedis, "hash", 1000));
+        transitions = new OrderTransitionService(jedis, orderStore, 3600, 1000);
+        eventLog = new OrderEventLog(jedis, orderStore, 500);
+        orderService = new OrderService(postgresClient, jedis, orderStore, transitions, eventLog,
+                new MerchantCatalogCache(postgresClient, jedis, 300), 30000, 300000);
+    }
+
+    @AfterEach
+    void stopStub() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    void duplicateWhileInFlightSharesTheFirstReply() throws Exception {
+        backendGate = new CountDownLatch(1);
+        WebSocketSession first = session("first");
+        WebSocketSession second = session("second");
+
+        orderService.processOrder(request("tap-1"), first);
+        orderService.processOrder(request("tap-1"), second);
+        backendGate.countDown();
+
+        assertEquals("create", reply(first).get("messageType"));
+        assertEquals("create", reply(second).get("messageType"));
+        assertEquals(1, backendCreates.get());
+    }
+
+    @Test
+    void otherCreateWhileInFlightIsTurnedAway() throws Exception {
+        backendGate = new CountDownLatch(1);
+        WebSocketSession first = session("first");
+        WebSocketSession second = session("second");
+
+        orderService.processOrder(request("tap-1"), first);
+        orderService.processOrder(request("tap-2"), second);
+
+        assertEquals("error", reply(second).get("messageType"));
+        backendGate.countDown();
+        assertEquals("create", reply(first).get("messageType"));
+        assertEquals(1, backendCreates.get());
+    }
+
+    @Test
+    void retryAfterTheCreateFinishedReplaysIt() throws Exception {
+        WebSocketSession first = session("first");
+        orderService.processOrder(request("tap-1"), first);
+        Map<String, Object> created = reply(first);
+
+        WebSocketSession retry = session("retry");
+        orderService.processOrder(request("tap-1"), retry);
+
+        Map<String, Object> replayed = reply(retry);
+        assertEquals("create", replayed.get("messageType"));
+        assertEquals(created.get("data"), replayed.get("data"));
+        assertEquals(1, backendCreates.get());
+        assertNull(jedis.get(RedisKeys.createClaim(ORDER_KEY)));
+    }
+
+    @Test
+    void claimHeldByAnotherNodeIsLeftAlone() throws Exception {
+        jedis.set(RedisKeys.createClaim(ORDER_KEY), "tap-elsewhere");
+        WebSocketSession session = session("first");
+
+        orderService.processOrder(request("tap-1"), session);
+        assertEquals("error", reply(session).get("messageType"));
+
+        // Releasing with the wrong key, as after this node's claim expired and another took it
+        orderStore.releaseCreate(ORDER_KEY, "tap-1");
+        assertEquals("tap-elsewhere", jedis.get(RedisKeys.createClaim(ORDER_KEY)));
+        assertEquals(0, backendCreates.get());
+    }
+
+    @Test
+    void unexpectedFailureStillRepliesAndFreesTheOrderKey() throws Exception {
+        doThrow(new IllegalStateException("Unreadable order")).when(orderStore).getStatus(any());
+        WebSocketSession first = session("first");
+
+        orderService.processOrder(request("tap-1"), first);
+        assertEquals("error", reply(first).get("messageType"));
+        assertNull(jedis.get(RedisKeys.createClaim(ORDER_KEY)));
+
+        reset(orderStore);
+        WebSocketSession retry = session("retry");
+        orderService.processOrder(request("tap-1"), retry);
+        assertEquals("create", reply(retry).get("messageType"));
+    }
+
+    @Test
+    void createAndTransitionsAreLoggedWithTheOrder() throws Exception {
+        WebSocketSession customer = session("customer");
+        orderService.processOrder(request("tap-1"), customer);
+        assertEquals("create", reply(customer).get("messageType"));
+
+        transitions.apply(MERCHANT_ID, 1, 42, OrderTransitionService.Transition.READY);
+        reset(customer);
+        when(customer.isOpen()).thenReturn(true);
+        orderService.arriveOrder(customer, MERCHANT_ID, 42, 1);
+        assertEquals("update", reply(customer).get("messageType"));
+
+        String stream = RedisKeys.events(MERCHANT_ID);
+        eventLog.ensureGroup(stream, "test");
+        List<OrderEvent> events = eventLog.read("test", "test", Set.of(stream), false, 10, 100);
+        assertEquals(List.of(OrderEvent.CREATE, OrderEvent.READY, OrderEvent.ARRIVE),
+                events.stream().map(OrderEvent::getType).toList());
+        assertEquals(List.of("unready", "ready", "arrived"),
+                events.stream().map(event -> event.getOrder().getStatus()).toList());
+        assertEquals(List.of(1L, 2L, 3L), events.stream().map(event -> event.getOrder().getVersion()).toList());
+    }
+
+    private static WebSocketSession session(String id) {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(id);
+        when(session.isOpen()).thenReturn(true);
+        return session;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> reply(WebSocketSession session) throws Exception {
+        ArgumentCaptor<WebSocketMessage<?>> frame = ArgumentCaptor.forClass(WebSocketMessage.class);
+        verify(session, timeout(5000)).sendMessage(frame.capture());
+        return objectMapper.readValue(((TextMessage) frame.getValue()).getPayload(), Map.class);
+    }
+
+    private static OrderRequest request(String idempotencyKey) {
+        OrderRequest request = PostgresClientTest.request(MERCHANT_ID, 1, 2);
+        request.setIdempotencyKey(idempotencyKey);
+        return request;
+    }
+}
@@ -0,0 +1,214 @@
+package edu.help.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.help.dto.Order;
+import edu.help.dto.OrderEvent;
+import edu.help.service.OrderTransitionService.Outcome;
+import edu.help.service.OrderTransitionService.Transition;
+import edu.help.service.OrderTransitionService.TransitionResult;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.resps.StreamEntry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * The transition script against {@link TestRedis}, once per storage codec.
+ * The JSON runs need RedisJSON and are skipped on the embedded server; point
+ * {@code -Dtest.redis.url} at a Redis Stack to run them.
+ */
+class OrderTransitionServiceTest {
+
+    private static final int MERCHANT_ID = 3;
+    private static final int EMPLOYEE_ID = 7;
+    private static final int CUSTOMER_ID = 42;
+    private static final long CREATED_AT = 1700000000000L;
+    private static final long TTL_SECONDS = 60;
+
+    private static final String ORDER_KEY = RedisKeys.order(MERCHANT_ID, EMPLOYEE_ID, CUSTOMER_ID);
+    private static final String TERMINAL_INDEX = RedisKeys.terminalOrders(MERCHANT_ID, EMPLOYEE_ID);
+    private static final String OPEN_ORDERS = RedisKeys.openOrders(MERCHANT_ID);
+    private static final String OUTBOX = RedisKeys.outbox(MERCHANT_ID);
+    private static final String EVENTS = RedisKeys.events(MERCHANT_ID);
+
+    private static final List<String> STATUSES = List.of("unready", "ready", "arrived", "delivered", "canceled");
+
+    // Written out rather than read from the enum, so a changed list fails here
+    private static final Map<Transition, Set<String>> ALLOWED_FROM = Map.of(
+            Transition.READY, Set.of("unready", "arrived"),
+            Transition.ARRIVE, Set.of("ready"),
+            Transition.DELIVER, Set.of("ready", "arrived"),
+            Transition.CANCEL, Set.of("unready", "ready", "arrived"),
+            Transition.EXPIRE, Set.of("unready"));
+
+    private static final Map<Transition, String> EVENT_TYPES = Map.of(
+            Transition.READY, OrderEvent.READY,
+            Transition.ARRIVE, OrderEvent.ARRIVE,
+            Transition.DELIVER, OrderEvent.DELIVER,
+            Transition.CANCEL, OrderEvent.CANCEL,
+            Transition.EXPIRE, OrderEvent.CANCEL);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private UnifiedJedis jedis;
+    private OrderStore orderStore;
+    private OrderTransitionService transitions;
+
+    private void setUp(String format, long ttlSeconds) {
+        assumeTrue("hash".equals(format) || TestRedis.supportsJson(), "Needs RedisJSON");
+        jedis = TestRedis.jedis();
+        jedis.flushAll();
+        orderStore = new OrderStore(jedis, format, 1000);
+        transitions = new OrderTransitionService(jedis, orderStore, ttlSeconds, 1000);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "hash", "json" })
+    void appliesEachTransitionOnlyFromItsAllowedStatuses(String format) throws Exception {
+        setUp(format, TTL_SECONDS);
+
+        for (Transition transition : Transition.values()) {
+            for (String from : STATUSES) {
+                jedis.flushAll();
+                create(from);
+
+                TransitionResult result = apply(transition);
+
+                String context = transition + " from " + from;
+                assertEquals(from, result.getPreviousStatus(), context);
+                if (ALLOWED_FROM.get(transition).contains(from)) {
+                    assertEquals(Outcome.APPLIED, result.getOutcome(), context);
+                    assertEquals(transition.getStatus(), result.getOrder().getStatus(), context);
+                    assertEquals(2, result.getOrder().getVersion(), context);
+                    assertEquals(List.of(OrderEvent.CREATE, EVENT_TYPES.get(transition)), eventTypes(), context);
+                } else {
+                    assertEquals(Outcome.REJECTED, result.getOutcome(), context);
+                    assertNull(result.getOrder(), context);
+                    assertEquals(from, stored().getStatus(), context);
+                    assertEquals(1, stored().getVersion(), context);
+                    assertEquals(List.of(OrderEvent.CREATE), eventTypes(), context);
+                    assertEquals(0, jedis.xlen(OUTBOX), context);
+                }
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "hash", "json" })
+    void openTransitionBumpsTheVersionAndKeepsTheIndexes(String format) throws Exception {
+        setUp(format, TTL_SECONDS);
+        create("unready");
+
+        assertEquals(Outcome.APPLIED, apply(Transition.READY).getOutcome());
+
+        Order order = stored();
+        assertEquals("ready", order.getStatus());
+        assertEquals(2, order.getVersion());
+        // NX: the entries written at create keep their creation-time score
+        assertEquals(CREATED_AT, jedis.zscore(TERMINAL_INDEX, ORDER_KEY));
+        assertEquals(CREATED_AT, jedis.zscore(OPEN_ORDERS, ORDER_KEY));
+        assertEquals(-1, jedis.pttl(ORDER_KEY));
+        assertEquals(0, jedis.xlen(OUTBOX));
+
+        // An open order that fell out of the indexes is put back
+        jedis.zrem(TERMINAL_INDEX, ORDER_KEY);
+        jedis.zrem(OPEN_ORDERS, ORDER_KEY);
+        assertEquals(Outcome.APPLIED, apply(Transition.ARRIVE).getOutcome());
+        assertEquals(3, stored().getVersion());
+        assertNotNull(jedis.zscore(TERMINAL_INDEX, ORDER_KEY));
+        assertNotNull(jedis.zscore(OPEN_ORDERS, ORDER_KEY));
+        assertEquals(List.of(OrderEvent.CREATE, OrderEvent.READY, OrderEvent.ARRIVE), eventTypes());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "hash", "json" })
+    void finalTransitionUnindexesQueuesAndExpires(String format) throws Exception {
+        setUp(format, TTL_SECONDS);
+        create("ready");
+
+        assertEquals(Outcome.APPLIED, apply(Transition.DELIVER).getOutcome());
+
+        assertNull(jedis.zscore(TERMINAL_INDEX, ORDER_KEY));
+        assertNull(jedis.zscore(OPEN_ORDERS, ORDER_KEY));
+        long ttl = jedis.pttl(ORDER_KEY);
+        assertTrue(ttl > 0 && ttl <= TTL_SECONDS * 1000, "TTL " + ttl);
+
+        List<StreamEntry> outbox = jedis.xrange(OUTBOX, "-", "+");
+        assertEquals(1, outbox.size());
+        Order queued = decode(outbox.get(0));
+        assertEquals("delivered", queued.getStatus());
+        assertEquals(2, queued.getVersion());
+        assertEquals(CUSTOMER_ID, queued.getCustomerId());
+
+        List<StreamEntry> events = jedis.xrange(EVENTS, "-", "+");
+        assertEquals(OrderEvent.DELIVER, events.get(1).getFields().get("type"));
+        assertEquals("delivered", decode(events.get(1)).getStatus());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "hash", "json" })
+    void zeroTtlKeepsFinishedOrders(String format) throws Exception {
+        setUp(format, 0);
+        create("unready");
+
+        assertEquals(Outcome.APPLIED, apply(Transition.EXPIRE).getOutcome());
+
+        assertEquals("canceled", stored().getStatus());
+        assertEquals(-1, jedis.pttl(ORDER_KEY));
+        assertEquals(1, jedis.xlen(OUTBOX));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "hash", "json" })
+    void missingOrderChangesNothing(String format) throws Exception {
+        setUp(format, TTL_SECONDS);
+
+        TransitionResult result = apply(Transition.CANCEL);
+
+        assertEquals(Outcome.MISSING, result.getOutcome());
+        assertFalse(jedis.exists(ORDER_KEY));
+        assertFalse(jedis.exists(TERMINAL_INDEX));
+        assertFalse(jedis.exists(OUTBOX));
+        assertFalse(jedis.exists(EVENTS));
+    }
+
+    private void create(String status) throws Exception {
+        Order order = new Order("Customer " + CUSTOMER_ID, MERCHANT_ID, CUSTOMER_ID, EMPLOYEE_ID, 16.0, 0, 3.2,
+                1.0, 1.28, true, List.of(new Order.ItemOrder(1, "Lager", "regular", 2)), "bar", status,
+                String.valueOf(CREATED_AT), "session-" + CUSTOMER_ID);
+        order.setVersion(1);
+        orderStore.createOrder(ORDER_KEY, order);
+    }
+
+    private TransitionResult apply(Transition transition) throws Exception {
+        return transitions.apply(MERCHANT_ID, EMPLOYEE_ID, CUSTOMER_ID, transition);
+    }
+
+    private Order stored() {
+        return orderStore.getOrders(List.of(ORDER_KEY)).get(ORDER_KEY);
+    }
+
+    private List<String> eventTypes() {
+        return jedis.xrange(EVENTS, "-", "+").stream().map(entry -> entry.getFields().get("type")).toList();
+    }
+
+    // Outbox and transition event entries hold the order as stored, tagged with its Redis type
+    private Order decode(StreamEntry entry) throws Exception {
+        String kind = entry.getFields().get("kind");
+        String payload = entry.getFields().get("order");
+        return orderStore.codecForType(kind).decode(
+                "hash".equals(kind) ? objectMapper.readValue(payload, List.class) : payload);
+    }
+}
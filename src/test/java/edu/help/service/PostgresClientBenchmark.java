@@ -0,0 +1,162 @@
+package edu.help.service;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.security.KeyStore;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+import edu.help.config.AppConfig;
+import edu.help.dto.OrderRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Order-create latency through {@link PostgresClient} against a local TLS
+ * stub of the Postgres service: a fresh connection (and TLS handshake) per
+ * call versus the pooled keep-alive {@code postgresHttpClient} from
+ * {@link AppConfig}. The JDK stub only speaks HTTP/1.1, so this measures
+ * connection reuse, not HTTP/2 multiplexing.
+ *
+ * Run with: ./mvnw test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=edu.help.service.PostgresClientBenchmark
+ */
+public class PostgresClientBenchmark {
+
+    private static final char[] PASSWORD = "benchmark".toCharArray();
+    private static final int ITERATIONS = 200;
+    private static final int CONCURRENT = 32;
+
+    public static void main(String[] args) throws Exception {
+        File keyStore = createKeyStore();
+        System.setProperty("javax.net.ssl.trustStore", keyStore.getPath());
+        System.setProperty("javax.net.ssl.trustStorePassword", new String(PASSWORD));
+
+        HttpsServer server = startStub(keyStore);
+        String baseUrl = "https://localhost:" + server.getAddress().getPort();
+        try {
+            HttpClient pooled = new AppConfig().postgresHttpClient("HTTP_2", 2000, 8);
+            PostgresClient pooledClient = client(pooled, baseUrl);
+            OrderRequest request = request();
+
+            // Warm up the JIT and the pooled connections before measuring
+            for (int i = 0; i < 50; i++) {
+                client(freshHttpClient(), baseUrl).processOrder(request).join();
+                pooledClient.processOrder(request).join();
+            }
+
+            long[] fresh = new long[ITERATIONS];
+            long[] reused = new long[ITERATIONS];
+            for (int i = 0; i < ITERATIONS; i++) {
+                PostgresClient freshClient = client(freshHttpClient(), baseUrl);
+                long start = System.nanoTime();
+                freshClient.processOrder(request).join();
+                fresh[i] = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                pooledClient.processOrder(request).join();
+                reused[i] = System.nanoTime() - start;
+            }
+            System.out.printf("sequential: fresh connection p50=%.2fms p99=%.2fms | pooled p50=%.2fms p99=%.2fms%n",
+                    percentile(fresh, 50), percentile(fresh, 99), percentile(reused, 50), percentile(reused, 99));
+
+            long start = System.nanoTime();
+            List<CompletableFuture<?>> calls = new ArrayList<>();
+            for (int i = 0; i < ITERATIONS; i++) {
+                calls.add(pooledClient.processOrder(request));
+                if (calls.size() == CONCURRENT) {
+                    CompletableFuture.allOf(calls.toArray(new CompletableFuture[0])).join();
+                    calls.clear();
+                }
+            }
+            CompletableFuture.allOf(calls.toArray(new CompletableFuture[0])).join();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("pooled, %d in flight: %.0f orders/s%n", CONCURRENT, ITERATIONS / seconds);
+        } finally {
+            server.stop(0);
+            keyStore.delete();
+        }
+    }
+
+    private static PostgresClient client(HttpClient httpClient, String baseUrl) {
+        return new PostgresClient(httpClient, new SimpleMeterRegistry(), baseUrl, 5000, 20, 10, 50, 10000, 3,
+                CONCURRENT);
+    }
+
+    // What every call paid before: no connection kept between calls
+    private static HttpClient freshHttpClient() {
+        return HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+    }
+
+    private static OrderRequest request() {
+        OrderRequest request = new OrderRequest();
+        request.setMerchantId(990001);
+        request.setCustomerId(990000001);
+        request.setEmployeeId(1);
+        OrderRequest.ItemOrder item = new OrderRequest.ItemOrder();
+        item.setItemId(1);
+        item.setQuantity(2);
+        item.setPaymentType("regular");
+        request.setItems(List.of(item));
+        request.setIsDiscount(false);
+        request.setPointOfSale("bar");
+        return request;
+    }
+
+    // Self-signed certificate for localhost, made with the JDK's keytool
+    private static File createKeyStore() throws Exception {
+        File keyStore = File.createTempFile("postgres-stub", ".p12");
+        keyStore.delete();
+        String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+        Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "stub", "-keyalg", "EC",
+                "-dname", "CN=localhost", "-ext", "san=dns:localhost,ip:127.0.0.1", "-validity", "1",
+                "-storetype", "PKCS12", "-keystore", keyStore.getPath(),
+                "-storepass", new String(PASSWORD), "-keypass", new String(PASSWORD))
+                .inheritIO()
+                .start();
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("keytool failed");
+        }
+        return keyStore;
+    }
+
+    private static HttpsServer startStub(File keyStoreFile) throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (FileInputStream in = new FileInputStream(keyStoreFile)) {
+            keyStore.load(in, PASSWORD);
+        }
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, PASSWORD);
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagers.getKeyManagers(), null, null);
+
+        HttpsServer server = HttpsServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+        PostgresStub.register(server);
+        server.setExecutor(Executors.newFixedThreadPool(CONCURRENT, runnable -> {
+            Thread thread = new Thread(runnable, "postgres-stub");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+        return server;
+    }
+
+    private static double percentile(long[] samples, int percentile) {
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        int index = Math.min(sorted.length - 1, (int) Math.ceil(percentile / 100.0 * sorted.length) - 1);
+        return sorted[index] / 1_000_000.0;
+    }
+}
@@ -0,0 +1,186 @@
+package edu.help.service;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import edu.help.dto.OrderRequest;
+import edu.help.dto.OrderResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link PostgresClient} against {@link PostgresStub} on a local port.
+ * Merchant 404 always answers HTTP 404, merchant 500 always answers HTTP 500
+ * and merchant 504 answers too slowly.
+ */
+class PostgresClientTest {
+
+    private static final int MISSING_MERCHANT = 404;
+    private static final int FAILING_MERCHANT = 500;
+    private static final int SLOW_MERCHANT = 504;
+    private static final long REQUEST_TIMEOUT_MILLIS = 1000;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private SimpleMeterRegistry registry;
+    private PostgresClient client;
+
+    @BeforeEach
+    void startStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        PostgresStub.register(server);
+        server.createContext("/employee/" + MISSING_MERCHANT + "/", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.createContext("/employee/" + FAILING_MERCHANT + "/", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        server.createContext("/employee/" + SLOW_MERCHANT + "/", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            try {
+                Thread.sleep(REQUEST_TIMEOUT_MILLIS * 3);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        // The slow handler must not hold up the others
+        serverExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "postgres-stub");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+        registry = new SimpleMeterRegistry();
+        client = new PostgresClient(httpClient, registry,
+                "http://localhost:" + server.getAddress().getPort(), REQUEST_TIMEOUT_MILLIS, 20, 10, 50, 10000, 3, 64);
+    }
+
+    @AfterEach
+    void stopStub() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    void processOrderDecodesTheResponse() {
+        OrderResponse response = client.processOrder(request(1, 1, 2)).join();
+
+        assertEquals("success", response.getMessageType());
+        assertEquals("Customer 42", response.getName());
+        assertEquals(16.0, response.getTotalPrice(), 0.001);
+        assertEquals(1, response.getItems().size());
+        assertEquals("Lager", response.getItems().get(0).getItemName());
+        assertEquals(2, response.getItems().get(0).getQuantity());
+    }
+
+    @Test
+    void serverErrorFailsTheFuture() {
+        CompletionException error = assertThrows(CompletionException.class,
+                () -> client.processOrder(request(FAILING_MERCHANT, 1, 1)).join());
+
+        PostgresClient.StatusException status = assertInstanceOf(PostgresClient.StatusException.class,
+                error.getCause());
+        assertEquals(500, status.getStatus());
+    }
+
+    @Test
+    void clientErrorsDoNotOpenTheBreaker() {
+        for (int i = 0; i < 20; i++) {
+            CompletionException error = assertThrows(CompletionException.class,
+                    () -> client.processOrder(request(MISSING_MERCHANT, 1, 1)).join());
+            assertEquals(404, assertInstanceOf(PostgresClient.StatusException.class, error.getCause()).getStatus());
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED.ordinal(), breakerState());
+    }
+
+    @Test
+    void serverErrorsOpenTheBreaker() {
+        for (int i = 0; i < 10; i++) {
+            assertThrows(CompletionException.class,
+                    () -> client.processOrder(request(FAILING_MERCHANT, 1, 1)).join());
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN.ordinal(), breakerState());
+        CompletionException error = assertThrows(CompletionException.class,
+                () -> client.processOrder(request(1, 1, 1)).join());
+        assertInstanceOf(PostgresClient.UnavailableException.class, error.getCause());
+    }
+
+    @Test
+    void slowResponseTimesOut() {
+        long start = System.nanoTime();
+        CompletionException error = assertThrows(CompletionException.class,
+                () -> client.processOrder(request(SLOW_MERCHANT, 1, 1)).join());
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertInstanceOf(HttpTimeoutException.class, error.getCause());
+        assertTrue(elapsedMillis < REQUEST_TIMEOUT_MILLIS * 2, "took " + elapsedMillis + "ms");
+    }
+
+    @Test
+    void synchronousSendFailureReleasesItsPermits() {
+        HttpClient brokenClient = mock(HttpClient.class);
+        when(brokenClient.sendAsync(any(), any())).thenThrow(new IllegalStateException("Client shut down"));
+        SimpleMeterRegistry brokenRegistry = new SimpleMeterRegistry();
+        // Two bulkhead slots and a breaker that never opens, so a leaked permit shows up within a few calls
+        PostgresClient broken = new PostgresClient(brokenClient, brokenRegistry, "http://localhost:1",
+                REQUEST_TIMEOUT_MILLIS, 20, 1000, 100, 10000, 3, 2);
+
+        for (int i = 0; i < 5; i++) {
+            CompletionException error = assertThrows(CompletionException.class,
+                    () -> broken.processOrder(request(1, 1, 1)).join());
+            assertInstanceOf(IllegalStateException.class, error.getCause());
+        }
+
+        assertEquals(0, brokenRegistry.get("postgres.bulkhead.in-flight").gauge().value());
+    }
+
+    private int breakerState() {
+        return (int) registry.get("postgres.breaker.state").gauge().value();
+    }
+
+    static OrderRequest request(int merchantId, int itemId, int quantity) {
+        OrderRequest request = new OrderRequest();
+        request.setMerchantId(merchantId);
+        request.setCustomerId(42);
+        request.setEmployeeId(1);
+        OrderRequest.ItemOrder item = new OrderRequest.ItemOrder();
+        item.setItemId(itemId);
+        item.setQuantity(quantity);
+        item.setPaymentType("regular");
+        request.setItems(List.of(item));
+        request.setIsDiscount(false);
+        request.setPointOfSale("bar");
+        return request;
+    }
+}
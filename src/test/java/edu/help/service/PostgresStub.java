@@ -0,0 +1,126 @@
+package edu.help.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import edu.help.dto.MerchantCatalog;
+import edu.help.dto.OrderRequest;
+import edu.help.dto.OrderResponse;
+
+/**
+ * Stand-in for the Postgres service, for running this service offline. Every
+ * merchant has the same menu: items 1-5, item 4 sold out, and only items 1
+ * and 2 payable with points. Start it, then run the app with
+ * {@code postgres.base-url=http://localhost:8089}. Publish a merchantId on
+ * {@code catalog:invalidate} to make the app reload the catalog.
+ *
+ * Run with: ./mvnw test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=edu.help.service.PostgresStub [-Dexec.args=port]
+ */
+public class PostgresStub {
+
+    private static final Map<Integer, String> ITEM_NAMES = Map.of(1, "Lager", 2, "Cider", 3, "Margarita",
+            4, "Espresso Martini", 5, "Negroni");
+    private static final int SOLD_OUT_ITEM = 4;
+    private static final double ITEM_PRICE = 8.00;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8089;
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        register(server);
+        server.start();
+        System.out.println("Postgres stub listening on http://localhost:" + port);
+    }
+
+    // Adds the stub endpoints to a server, plain or HTTPS
+    public static void register(HttpServer server) {
+        server.createContext("/employee/", PostgresStub::handle);
+    }
+
+    static void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        byte[] body = exchange.getRequestBody().readAllBytes();
+
+        if (path.endsWith("/catalog")) {
+            respond(exchange, 200, objectMapper.writeValueAsString(catalog(merchantId(path))));
+        } else if (path.endsWith("/processOrder")) {
+            OrderRequest request = objectMapper.readValue(body, OrderRequest.class);
+            respond(exchange, 200, objectMapper.writeValueAsString(processOrder(request)));
+        } else if (path.equals("/employee/save")) {
+            respond(exchange, 200, "");
+        } else {
+            respond(exchange, 404, "");
+        }
+    }
+
+    private static int merchantId(String path) {
+        String[] parts = path.split("/");
+        return Integer.parseInt(parts[2]);
+    }
+
+    private static MerchantCatalog catalog(int merchantId) {
+        MerchantCatalog catalog = new MerchantCatalog();
+        catalog.setMerchantId(merchantId);
+        List<MerchantCatalog.Item> items = new ArrayList<>();
+        for (int itemId : ITEM_NAMES.keySet()) {
+            MerchantCatalog.Item item = new MerchantCatalog.Item();
+            item.setItemId(itemId);
+            item.setAvailable(itemId != SOLD_OUT_ITEM);
+            item.setPointEligible(itemId <= 2);
+            items.add(item);
+        }
+        catalog.setItems(items);
+        return catalog;
+    }
+
+    private static OrderResponse processOrder(OrderRequest request) {
+        OrderResponse response = new OrderResponse();
+        response.setName("Customer " + request.getCustomerId());
+        response.setTimestamp(String.valueOf(System.currentTimeMillis()));
+
+        List<OrderResponse.ItemOrder> items = new ArrayList<>();
+        double total = 0;
+        for (OrderRequest.ItemOrder item : request.getItems()) {
+            String name = ITEM_NAMES.get(item.getItemId());
+            if (name == null || item.getItemId() == SOLD_OUT_ITEM) {
+                response.setMessageType("error");
+                response.setMessage("Item " + item.getItemId() + " is not available.");
+                response.setItems(items);
+                return response;
+            }
+            items.add(new OrderResponse.ItemOrder(item.getItemId(), name, item.getQuantity(), item.getPaymentType()));
+            total += ITEM_PRICE * item.getQuantity();
+        }
+
+        response.setMessageType("success");
+        response.setMessage("Order processed.");
+        response.setItems(items);
+        response.setTotalPrice(total);
+        response.setTotalGratuity(total * 0.2);
+        response.setTotalServiceFee(1.00);
+        response.setTotalTax(total * 0.08);
+        return response;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
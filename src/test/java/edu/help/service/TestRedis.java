@@ -0,0 +1,70 @@
+package edu.help.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.URI;
+
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.embedded.RedisServer;
+
+/**
+ * Redis for tests. Uses the server at {@code -Dtest.redis.url} when given,
+ * e.g. a Redis Stack for the RedisJSON paths, otherwise starts an embedded
+ * Redis once per test run on a free port. Tests share it, so each one
+ * should start with FLUSHALL.
+ */
+final class TestRedis {
+
+    private static UnifiedJedis jedis;
+
+    private TestRedis() {
+    }
+
+    static synchronized UnifiedJedis jedis() {
+        if (jedis != null) {
+            return jedis;
+        }
+        String url = System.getProperty("test.redis.url");
+        if (url != null && !url.isBlank()) {
+            jedis = new JedisPooled(URI.create(url));
+            return jedis;
+        }
+        try {
+            int port;
+            try (ServerSocket socket = new ServerSocket(0)) {
+                port = socket.getLocalPort();
+            }
+            RedisServer server = RedisServer.newRedisServer()
+                    .port(port)
+                    .bind("127.0.0.1")
+                    .setting("save \"\"")
+                    .setting("appendonly no")
+                    .build();
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    server.stop();
+                } catch (IOException e) {
+                    System.err.println("Failed to stop test Redis: " + e.getMessage());
+                }
+            }));
+            jedis = new JedisPooled("127.0.0.1", port);
+            return jedis;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to start test Redis", e);
+        }
+    }
+
+    // Whether the server has RedisJSON, which the JSON order codec needs
+    static boolean supportsJson() {
+        try {
+            jedis().jsonType("test:json-probe");
+            return true;
+        } catch (JedisDataException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package edu.help.websocket;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * CBOR frames through {@link OrderedDispatchHandlerDecorator} and
+ * {@link BinaryProtocolHandlerDecorator}, with the frame buffer reused the
+ * way the container reuses it.
+ */
+class OrderedDispatchHandlerDecoratorTest {
+
+    private static final ObjectMapper CBOR_MAPPER = new ObjectMapper(new CBORFactory());
+
+    private final SessionTaskExecutor executor = new SessionTaskExecutor(new SimpleMeterRegistry(), 1, 100);
+
+    @AfterEach
+    void stopExecutor() {
+        executor.stop();
+    }
+
+    @Test
+    void backToBackBinaryFramesAreDecodedFromTheirOwnBytes() throws Exception {
+        RecordingHandler handler = new RecordingHandler(2);
+        OrderedDispatchHandlerDecorator chain = new OrderedDispatchHandlerDecorator(
+                new BinaryProtocolHandlerDecorator(handler), executor);
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn("cbor-session");
+        when(session.getAcceptedProtocol()).thenReturn(BinaryProtocolHandlerDecorator.CBOR);
+        when(session.isOpen()).thenReturn(true);
+
+        // Holds the only worker, so both frames are queued before either is decoded
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute("blocker", () -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        chain.afterConnectionEstablished(session);
+
+        ByteBuffer containerBuffer = ByteBuffer.allocate(256);
+        containerBuffer.put(CBOR_MAPPER.writeValueAsBytes(Map.of("action", "create", "merchantId", 1))).flip();
+        chain.handleMessage(session, new BinaryMessage(containerBuffer));
+        containerBuffer.clear();
+        containerBuffer.put(CBOR_MAPPER.writeValueAsBytes(Map.of("action", "refresh"))).flip();
+        chain.handleMessage(session, new BinaryMessage(containerBuffer));
+        release.countDown();
+
+        assertTrue(handler.received.await(10, TimeUnit.SECONDS));
+        assertEquals(Map.of("action", "create", "merchantId", 1), handler.payloads.get(0));
+        assertEquals(Map.of("action", "refresh"), handler.payloads.get(1));
+    }
+
+    private static final class RecordingHandler extends TextWebSocketHandler
+            implements BinaryProtocolHandlerDecorator.PayloadHandler {
+
+        private final List<Map<String, Object>> payloads = new CopyOnWriteArrayList<>();
+        private final CountDownLatch received;
+
+        RecordingHandler(int expected) {
+            this.received = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void handlePayload(WebSocketSession session, Map<String, Object> payload) {
+            payloads.add(payload);
+            received.countDown();
+        }
+    }
+}
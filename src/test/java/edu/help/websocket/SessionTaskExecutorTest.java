@@ -0,0 +1,167 @@
+package edu.help.websocket;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link SessionTaskExecutor} with real worker threads: per-session order,
+ * the hand-off after {@link SessionTaskExecutor#MAX_BATCH} tasks, the
+ * per-session cap and dropping drained queues.
+ */
+class SessionTaskExecutorTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private SessionTaskExecutor executor;
+
+    @AfterEach
+    void stopExecutor() {
+        executor.stop();
+    }
+
+    @Test
+    void runsEachSessionsTasksInOrderAndOneAtATime() throws InterruptedException {
+        int sessions = 20;
+        int tasksPerSession = 90;
+        executor = new SessionTaskExecutor(registry, 8, 100);
+        ConcurrentHashMap<String, List<Integer>> ran = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, AtomicBoolean> busy = new ConcurrentHashMap<>();
+        AtomicInteger overlaps = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(sessions * tasksPerSession);
+
+        List<Thread> submitters = new ArrayList<>();
+        for (int s = 0; s < sessions; s++) {
+            String sessionId = "session-" + s;
+            ran.put(sessionId, Collections.synchronizedList(new ArrayList<>()));
+            busy.put(sessionId, new AtomicBoolean());
+            submitters.add(new Thread(() -> {
+                for (int i = 0; i < tasksPerSession; i++) {
+                    int task = i;
+                    assertTrue(executor.execute(sessionId, () -> {
+                        if (!busy.get(sessionId).compareAndSet(false, true)) {
+                            overlaps.incrementAndGet();
+                        }
+                        ran.get(sessionId).add(task);
+                        busy.get(sessionId).set(false);
+                        done.countDown();
+                    }));
+                }
+            }));
+        }
+        submitters.forEach(Thread::start);
+        for (Thread submitter : submitters) {
+            submitter.join();
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(0, overlaps.get());
+        for (List<Integer> tasks : ran.values()) {
+            assertEquals(tasksPerSession, tasks.size());
+            for (int i = 0; i < tasksPerSession; i++) {
+                assertEquals(i, tasks.get(i));
+            }
+        }
+        awaitNoQueues();
+    }
+
+    @Test
+    void busySessionHandsItsThreadOnAfterABatch() throws InterruptedException {
+        executor = new SessionTaskExecutor(registry, 1, 100);
+        List<String> ran = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(41);
+
+        executor.execute("busy", () -> {
+            await(release);
+            ran.add("busy");
+            done.countDown();
+        });
+        for (int i = 1; i < 40; i++) {
+            executor.execute("busy", () -> {
+                ran.add("busy");
+                done.countDown();
+            });
+        }
+        executor.execute("other", () -> {
+            ran.add("other");
+            done.countDown();
+        });
+        release.countDown();
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(SessionTaskExecutor.MAX_BATCH, ran.indexOf("other"));
+    }
+
+    @Test
+    void refusesTasksOverTheCapButKeepsASlotForTheLastOne() throws InterruptedException {
+        executor = new SessionTaskExecutor(registry, 1, 5);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger ran = new AtomicInteger();
+        CountDownLatch closed = new CountDownLatch(1);
+
+        // Holds the only worker so the session's tasks stay queued
+        executor.execute("blocker", () -> await(release));
+        for (int i = 0; i < 4; i++) {
+            assertTrue(executor.execute("flooding", ran::incrementAndGet));
+        }
+        assertFalse(executor.execute("flooding", ran::incrementAndGet));
+        assertTrue(executor.executeLast("flooding", closed::countDown));
+        assertFalse(executor.execute("flooding", ran::incrementAndGet));
+        assertFalse(executor.executeLast("flooding", closed::countDown));
+        release.countDown();
+
+        assertTrue(closed.await(10, TimeUnit.SECONDS));
+        assertEquals(4, ran.get());
+        awaitNoQueues();
+    }
+
+    @Test
+    void lateTaskForAClosedSessionLeavesNoQueueBehind() throws InterruptedException {
+        executor = new SessionTaskExecutor(registry, 2, 100);
+        CountDownLatch closed = new CountDownLatch(1);
+        CountDownLatch late = new CountDownLatch(1);
+
+        executor.executeLast("gone", closed::countDown);
+        assertTrue(closed.await(10, TimeUnit.SECONDS));
+        awaitNoQueues();
+
+        assertTrue(executor.execute("gone", late::countDown));
+        assertTrue(late.await(10, TimeUnit.SECONDS));
+        awaitNoQueues();
+    }
+
+    private void awaitNoQueues() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (queues() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, queues());
+        assertEquals(0, registry.get("websocket.inbound.queued").gauge().value());
+    }
+
+    private double queues() {
+        return registry.get("websocket.inbound.sessions").gauge().value();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}